@@ -0,0 +1,250 @@
+package com.voyageonline.threepane;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+
+import com.voyageonline.threepane.data.ItemSource;
+import com.voyageonline.threepane.data.MappedItemStore;
+import com.voyageonline.threepane.data.MappedItemStoreWriter;
+import com.voyageonline.threepane.data.SearchEngine;
+import com.voyageonline.threepane.data.SearchIndex;
+import com.voyageonline.threepane.dummy.DummyContent;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Timings of the plain Java parts of the app, as a baseline for changes to the catalog storage
+ * and the pane layout:
+ * <ul>
+ * <li>item lookups by ID, then by position, in catalogs of 1k, 100k and 1M items: generated
+ * ({@link DummyContent}), mapped from a file ({@link MappedItemStore}), and, for comparison, a
+ * {@link HashMap} of all the items like the one the catalog used to be;</li>
+ * <li>pane widths and positions: {@link PaneLayoutEngine} recomputing its table for a new
+ * width, looking a state up, and interpolating a transition frame;</li>
+ * <li>{@link RemovalList} add, contains and remove, at the sizes it's used at;</li>
+ * <li>{@link SearchIndex} queries over 1M items, for as many results as the
+ * {@link SearchEngine} asks for: a word every item has, exact and prefix matches of a
+ * number, two tokens, and a token found only inside terms.  Building the index is timed
+ * once.</li>
+ * </ul>
+ *
+ * Each benchmark is warmed up, then timed over several rounds; the best round is reported, in
+ * nanoseconds per operation.
+ *
+ * It lives in {@code jvm/src}, which isn't part of the app, and runs on a desktop JVM against
+ * the app's sources, with the SDK's android.jar only to compile them.  From {@code ThreePane},
+ * with a directory for the mapped catalogs:
+ * <pre>
+ *   javac -d /tmp/jvm -cp $ANDROID_JAR -sourcepath src:jvm/src \
+ *       jvm/src/com/voyageonline/threepane/Benchmarks.java
+ *   java -cp /tmp/jvm com.voyageonline.threepane.Benchmarks /tmp
+ * </pre>
+ */
+public class Benchmarks {
+    private static final int[] CATALOG_SIZES = {1000, 100000, 1000000};
+
+    private static final int SEARCH_CATALOG_SIZE = 1000000;
+    private static final String[] SEARCH_QUERIES = {"item", "12", "1234", "item 5", "345"};
+
+    /** Number of IDs looked up, in random order, by the lookup benchmarks. */
+    private static final int LOOKUP_IDS = 4096;
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    /** Length of a round, roughly. */
+    private static final long ROUND_NANOS = 200L * 1000 * 1000;
+
+    /** Something the benchmarks compute, printed so that their work can't be optimized out. */
+    private static long sSink;
+
+    /** One operation of a benchmark. */
+    private interface Op {
+        /** Run the operation for the {@code i}th time.  @return anything it computed. */
+        public int run(int i);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: Benchmarks <scratch directory>");
+            System.exit(1);
+        }
+        final File dir = new File(args[0]);
+        for (int size : CATALOG_SIZES) {
+            benchmarkLookups(size, dir);
+        }
+        benchmarkPaneLayout();
+        benchmarkRemovalList();
+        benchmarkSearch(SEARCH_CATALOG_SIZE);
+        System.out.println("(sink " + sSink + ")");
+    }
+
+    private static void benchmarkLookups(int size, File dir) throws IOException {
+        final DummyContent dummy = new DummyContent(size);
+        final File file = new File(dir, "benchmark-" + size + ".bin");
+        MappedItemStoreWriter.write(dummy, file);
+        final MappedItemStore mapped = MappedItemStore.open(file);
+        final HashMap<String, DummyItem> map = new HashMap<String, DummyItem>();
+        final DummyItem[] row = new DummyItem[1];
+        for (int i = 0; i < size; i++) {
+            dummy.load(i, 1, row);
+            map.put(row[0].id, row[0]);
+        }
+
+        final String[] ids = new String[LOOKUP_IDS];
+        final Random random = new Random(size);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Integer.toString(random.nextInt(size) + 1);
+        }
+        run("lookup " + size + " DummyContent", lookup(dummy, ids));
+        run("lookup " + size + " MappedItemStore", lookup(mapped, ids));
+        run("lookup " + size + " HashMap", new Op() {
+            public int run(int i) {
+                return map.get(ids[i % ids.length]).content.length();
+            }
+        });
+        file.delete();
+    }
+
+    /** @return an operation finding an item of {@code source} by ID, then loading it. */
+    private static Op lookup(final ItemSource source, final String[] ids) {
+        final DummyItem[] row = new DummyItem[1];
+        return new Op() {
+            public int run(int i) {
+                source.load(source.indexOf(ids[i % ids.length]), 1, row);
+                return row[0].content.length();
+            }
+        };
+    }
+
+    /** Three panes and states, as in {@link ThreePaneLayout}. */
+    private static void benchmarkPaneLayout() {
+        final PaneLayoutEngine engine = new PaneLayoutEngine(3, 3);
+        engine.setPaneWidth(0, 160);
+        engine.setPaneWidth(1, 160);
+        engine.setState(0, 0, 1);
+        engine.setState(1, 1, 2);
+        engine.setState(2, 1, 2);
+        final int[] lefts = new int[3];
+        final int[] widths = new int[3];
+        final int[] endLefts = new int[3];
+        final int[] endWidths = new int[3];
+        final int[] outLefts = new int[3];
+        final int[] outWidths = new int[3];
+
+        run("panes: new width and state", new Op() {
+            public int run(int i) {
+                // Alternate between widths, so that the table is recomputed every time.
+                engine.setContainerWidth(1280 - (i & 1));
+                engine.getPositions(i % 2, lefts, widths);
+                return lefts[1] + widths[2];
+            }
+        });
+        engine.setContainerWidth(1280);
+        run("panes: state lookup", new Op() {
+            public int run(int i) {
+                engine.getPositions(i % 2, lefts, widths);
+                return lefts[1] + widths[2];
+            }
+        });
+        engine.getPositions(0, lefts, widths);
+        engine.getPositions(1, endLefts, endWidths);
+        run("panes: transition frame", new Op() {
+            public int run(int i) {
+                PaneLayoutEngine.interpolate((i & 63) / 63f, lefts, widths, endLefts, endWidths,
+                        outLefts, outWidths);
+                return outLefts[1] + outWidths[2];
+            }
+        });
+    }
+
+    /** The fragments of one screen change: a few, removed, then looked up, then uninstalled. */
+    private static void benchmarkRemovalList() {
+        final RemovalList<Object> list = new RemovalList<Object>();
+        final Object[] items = new Object[4];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Object();
+        }
+        run("RemovalList: add 4, contains 4, remove 4", new Op() {
+            public int run(int i) {
+                int found = 0;
+                for (Object item : items) {
+                    list.add(item);
+                }
+                for (Object item : items) {
+                    found += list.contains(item) ? 1 : 0;
+                }
+                for (Object item : items) {
+                    found += list.remove(item) ? 1 : 0;
+                }
+                return found;
+            }
+        });
+    }
+
+    private static void benchmarkSearch(int size) {
+        final DummyContent dummy = new DummyContent(size);
+        final SearchIndex index = new SearchIndex();
+        final DummyItem[] page = new DummyItem[1000];
+        final long startNanos = System.nanoTime();
+        for (int start = 0; start < size; start += page.length) {
+            final int loaded = dummy.load(start, page.length, page);
+            for (int i = 0; i < loaded; i++) {
+                index.put(start + i, page[i].content);
+            }
+        }
+        System.out.println(String.format("%-44s %10.1f ms", "search " + size + ": build",
+                (System.nanoTime() - startNanos) / 1e6));
+
+        final SearchIndex.Progress progress = new SearchIndex.Progress() {
+            public boolean isCancelled() {
+                return false;
+            }
+
+            public void onPartialResults(int[] positions) {
+            }
+        };
+        for (final String query : SEARCH_QUERIES) {
+            run("search " + size + ": \"" + query + "\"", new Op() {
+                public int run(int i) {
+                    return index.query(query, SearchEngine.MAX_RESULTS, progress).length;
+                }
+            });
+        }
+    }
+
+    /** Time {@code op} and print its best time per operation. */
+    private static void run(String name, Op op) {
+        // Find how many operations fill a round.
+        int ops = 1;
+        long nanos;
+        do {
+            ops *= 2;
+            nanos = time(op, ops);
+        } while (nanos < ROUND_NANOS / 10);
+        // Slow operations, e.g. a query over 1M items, get at least one per round.
+        ops = (int) Math.max(1,
+                Math.min(Integer.MAX_VALUE, ops * (ROUND_NANOS / Math.max(1, nanos))));
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            time(op, ops);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            best = Math.min(best, time(op, ops));
+        }
+        System.out.println(String.format("%-44s %10.1f ns/op", name, best / (double) ops));
+    }
+
+    private static long time(Op op, int ops) {
+        long sink = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            sink += op.run(i);
+        }
+        final long nanos = System.nanoTime() - start;
+        sSink += sink;
+        return nanos;
+    }
+}
@@ -0,0 +1,82 @@
+package com.voyageonline.threepane.data;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.voyageonline.threepane.dummy.DummyContent;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Times the parsing and merging of {@link BulkFeedLoader} with 1 to N threads, after
+ * generating a feed of the given number of items if one is given.  Each thread count is run
+ * three times and the best is reported, with its speedup over one thread.  Writing to the
+ * {@link ItemDatabase} isn't timed: it needs a device.
+ *
+ * Runs on a desktop JVM, like the {@link com.voyageonline.threepane.Benchmarks}; from
+ * {@code ThreePane}:
+ * <pre>
+ *   javac -d /tmp/jvm -cp $ANDROID_JAR -sourcepath src:jvm/src \
+ *       jvm/src/com/voyageonline/threepane/data/BulkLoadBenchmark.java
+ *   java -cp /tmp/jvm com.voyageonline.threepane.data.BulkLoadBenchmark feed.jsonl 8 500000
+ * </pre>
+ */
+public class BulkLoadBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BulkLoadBenchmark <feed file> <max threads> [item count]");
+            System.exit(1);
+        }
+        final File file = new File(args[0]);
+        if (args.length == 3) {
+            writeFeed(new DummyContent(Integer.parseInt(args[2])), file);
+        }
+        final int maxThreads = Integer.parseInt(args[1]);
+        long baseMillis = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            long bestMillis = Long.MAX_VALUE;
+            int count = 0;
+            for (int rep = 0; rep < 3; rep++) {
+                final long startMillis = System.currentTimeMillis();
+                final BulkFeedLoader.Range[] ranges = BulkFeedLoader.parse(file, threads);
+                bestMillis = Math.min(bestMillis, System.currentTimeMillis() - startMillis);
+                count = 0;
+                for (BulkFeedLoader.Range range : ranges) {
+                    count += range.mRecords.length;
+                }
+            }
+            if (threads == 1) {
+                baseMillis = bestMillis;
+            }
+            System.out.println(threads + " threads: " + count + " records in " + bestMillis
+                    + " ms, " + String.format("%.2f", baseMillis / (double) bestMillis) + "x");
+        }
+    }
+
+    /** Write the items of {@code source} as a feed. */
+    private static void writeFeed(DummyContent source, File file) throws IOException {
+        final Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            final int count = source.getCount();
+            final DummyItem[] row = new DummyItem[1];
+            final DummyItem[] parentRow = new DummyItem[1];
+            for (int i = 0; i < count; i++) {
+                source.load(i, 1, row);
+                out.write("{\"id\": \"" + row[0].id + "\", \"content\": \"" + row[0].content
+                        + "\"");
+                final int parent = source.getParentPosition(i);
+                if (parent >= 0 && source.load(parent, 1, parentRow) == 1) {
+                    out.write(", \"parent\": \"" + parentRow[0].id + "\"");
+                }
+                out.write("}\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.voyageonline.threepane.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks of {@link FeedRecord#parse}: fields, escapes, skipped values, and the lines that
+ * aren't records, e.g. without an ID; and of {@link FeedReader} skipping and counting those and
+ * the lines over {@link FeedReader#MAX_LINE_LENGTH}.  Prints the checks that fail and exits
+ * with 1 if any did.
+ *
+ * Runs on a desktop JVM, like the {@link com.voyageonline.threepane.Benchmarks}; from
+ * {@code ThreePane}:
+ * <pre>
+ *   javac -d /tmp/jvm -cp $ANDROID_JAR -sourcepath src:jvm/src \
+ *       jvm/src/com/voyageonline/threepane/data/FeedRecordTest.java
+ *   java -cp /tmp/jvm com.voyageonline.threepane.data.FeedRecordTest
+ * </pre>
+ */
+public class FeedRecordTest {
+    private static int sFailures;
+
+    public static void main(String[] args) throws IOException {
+        testFields();
+        testEscapes();
+        testSkippedValues();
+        testNotRecords();
+        testReader();
+        if (sFailures > 0) {
+            System.out.println(sFailures + " checks FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static void testFields() {
+        checkRecord("{\"id\": \"1\", \"content\": \"Item 1\", \"parent\": \"p\"}",
+                "1", "Item 1", "p");
+        checkRecord("  {\"parent\":\"p\",\"content\":\"c\",\"id\":\"1\"}  ", "1", "c", "p");
+        checkRecord("{\"id\": \"1\"}", "1", "", null);
+        checkRecord("{\"id\": 42, \"content\": null, \"parent\": null}", "42", "", null);
+        checkRecord("{\"id\": -1.5e3, \"content\": true}", "-1.5e3", "true", null);
+        // The last of a repeated field wins.
+        checkRecord("{\"id\": \"1\", \"id\": \"2\"}", "2", "", null);
+        checkRecord(utf8("{\"id\": \"caf\u00e9\", \"content\": \"\u263a \u4e2d\"}"),
+                "caf\u00e9", "\u263a \u4e2d", null);
+
+        // Only the given bytes of the line are parsed.
+        final byte[] line = utf8("xx{\"id\": \"1\"}yy");
+        final FeedRecord record = FeedRecord.parse(line, 2, line.length - 4);
+        check("parse at an offset", record != null && record.mId.equals("1"));
+    }
+
+    private static void testEscapes() {
+        checkRecord("{\"id\": \"1\", \"content\": \"a\\\"b\\\\c\\/d\"}", "1", "a\"b\\c/d", null);
+        checkRecord("{\"id\": \"1\", \"content\": \"\\b\\f\\n\\r\\t\"}", "1", "\b\f\n\r\t", null);
+        checkRecord("{\"id\": \"1\", \"content\": \"\\u00e9\\u263A\\u0000\"}",
+                "1", "\u00e9\u263a\u0000", null);
+        // A surrogate pair, escaped as two units.
+        checkRecord("{\"id\": \"1\", \"content\": \"\\ud83d\\ude00!\"}", "1", "\ud83d\ude00!",
+                null);
+        checkRecord("{\"i\\u0064\": \"\\u0031\"}", "1", "", null);
+        checkRecord("{\"id\": \"1\", \"content\": \"a\\qb\"}", "1", "aqb", null);
+
+        checkNotRecord("{\"id\": \"1\", \"content\": \"\\u12G4\"}");
+        checkNotRecord("{\"id\": \"1\", \"content\": \"\\u12\"}");
+        checkNotRecord("{\"id\": \"1\", \"content\": \"ab\\");
+        checkNotRecord("{\"id\": \"1\", \"content\": \"ab\\\"}");
+    }
+
+    private static void testSkippedValues() {
+        checkRecord("{\"id\": \"1\", \"tags\": [\"a\", \"]\", {\"x\": \"}\"}], "
+                + "\"meta\": {\"k\": [1, 2], \"id\": \"nested\"}, \"content\": \"c\"}",
+                "1", "c", null);
+        checkRecord("{\"count\": 3, \"id\": \"1\", \"ok\": false, \"x\": null}", "1", "", null);
+        checkRecord("{\"id\": \"1\", \"s\": \"a,b}\\\"c\"}", "1", "", null);
+        checkNotRecord("{\"id\": \"1\", \"tags\": [1, 2");
+        checkNotRecord("{\"id\": \"1\", \"s\": \"open}");
+    }
+
+    private static void testNotRecords() {
+        // No ID.
+        checkNotRecord("{\"content\": \"c\", \"parent\": \"p\"}");
+        checkNotRecord("{\"id\": null, \"content\": \"c\"}");
+        checkNotRecord("{}");
+        checkNotRecord("{\"meta\": {\"id\": \"1\"}}");
+        // An ID that isn't a string or number.
+        checkNotRecord("{\"id\": [\"1\"]}");
+        checkNotRecord("{\"id\": {\"value\": \"1\"}}");
+        // Not an object, or not only one.
+        checkNotRecord("");
+        checkNotRecord("[\"id\", \"1\"]");
+        checkNotRecord("\"id\"");
+        checkNotRecord("{\"id\": \"1\"} x");
+        checkNotRecord("{\"id\": \"1\"}{\"id\": \"2\"}");
+        // Malformed.
+        checkNotRecord("{\"id\" \"1\"}");
+        checkNotRecord("{\"id\": \"1\",}");
+        checkNotRecord("{\"id\": \"1\"");
+        checkNotRecord("{id: \"1\"}");
+        checkNotRecord("{\"id\": }");
+
+        check("blank", FeedRecord.isBlank(utf8(" \t\r"), 0, 3));
+        check("empty is blank", FeedRecord.isBlank(new byte[0], 0, 0));
+        check("not blank", !FeedRecord.isBlank(utf8(" {} "), 0, 4));
+    }
+
+    /**
+     * Read a feed with good lines, blank lines, lines that aren't records, and lines up to and
+     * over the longest read.
+     */
+    private static void testReader() throws IOException {
+        final String longest = recordOfLength("4", FeedReader.MAX_LINE_LENGTH);
+        final String overlong = recordOfLength("x", FeedReader.MAX_LINE_LENGTH + 1);
+        final String feed = "{\"id\": \"1\"}\n"
+                + "\n"
+                + "   \n"
+                + overlong + "\n"
+                + "{\"id\": \"2\"}\r\n"
+                + "{\"content\": \"no id\"}\n"
+                + "not json\n"
+                + longest + "\n"
+                + overlong + overlong + "\n"
+                + "{\"id\": \"3\"}"; // No newline at the end.
+        final File file = File.createTempFile("feed", ".jsonl");
+        try {
+            final byte[] bytes = utf8(feed);
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+
+            final List<String> ids = new ArrayList<String>();
+            final FeedReader reader = new FeedReader(file, 0, file.length());
+            try {
+                FeedRecord record;
+                while ((record = reader.next()) != null) {
+                    ids.add(record.mId);
+                }
+                check("read IDs " + ids, ids.equals(Arrays.asList("1", "2", "4", "3")));
+                check("skipped " + reader.getSkipped(), reader.getSkipped() == 4);
+                check("offset at the end", reader.getOffset() == bytes.length);
+            } finally {
+                reader.close();
+            }
+
+            // A reader stops at its end offset, after the line there.
+            final int secondLine = feed.indexOf("{\"id\": \"2\"}");
+            final FeedReader range = new FeedReader(file, 0, secondLine);
+            try {
+                check("range first", "1".equals(range.next().mId));
+                check("range end", range.next() == null);
+                check("range skipped", range.getSkipped() == 1);
+            } finally {
+                range.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** @return a record with the given ID, padded with content to {@code length} bytes. */
+    private static String recordOfLength(String id, int length) {
+        final String head = "{\"id\": \"" + id + "\", \"content\": \"";
+        final String tail = "\"}";
+        final char[] content = new char[length - head.length() - tail.length()];
+        Arrays.fill(content, 'a');
+        return head + new String(content) + tail;
+    }
+
+    private static void checkRecord(String line, String id, String content, String parentId) {
+        checkRecord(utf8(line), id, content, parentId);
+    }
+
+    private static void checkRecord(byte[] line, String id, String content, String parentId) {
+        final FeedRecord record = FeedRecord.parse(line, 0, line.length);
+        final boolean same = record != null && record.mId.equals(id)
+                && record.mContent.equals(content)
+                && (parentId == null ? record.mParentId == null
+                        : parentId.equals(record.mParentId));
+        if (!same) {
+            System.out.println("FAILED: " + toString(line) + ": " + ((record == null) ? null
+                    : "[" + record.mId + ", " + record.mContent + ", " + record.mParentId + "]"));
+            sFailures++;
+        }
+    }
+
+    private static void checkNotRecord(String line) {
+        final byte[] bytes = utf8(line);
+        final FeedRecord record = FeedRecord.parse(bytes, 0, bytes.length);
+        if (record != null) {
+            System.out.println("FAILED: " + line + ": read as a record, ID " + record.mId);
+            sFailures++;
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        if (!passed) {
+            System.out.println("FAILED: " + name);
+            sFailures++;
+        }
+    }
+
+    private static byte[] utf8(String text) {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String toString(byte[] utf8) {
+        try {
+            return new String(utf8, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
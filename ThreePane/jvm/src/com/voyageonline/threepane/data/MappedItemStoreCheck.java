@@ -0,0 +1,85 @@
+package com.voyageonline.threepane.data;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.voyageonline.threepane.dummy.DummyContent;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Generates a test catalog with {@link MappedItemStoreWriter}, reads it back with
+ * {@link MappedItemStore} and checks it row by row against the generated items, by position
+ * and by ID.  Exits with 1 if any row differs.
+ *
+ * Runs on a desktop JVM, like the {@link com.voyageonline.threepane.Benchmarks}; from
+ * {@code ThreePane}:
+ * <pre>
+ *   javac -d /tmp/jvm -cp $ANDROID_JAR -sourcepath src:jvm/src \
+ *       jvm/src/com/voyageonline/threepane/data/MappedItemStoreCheck.java
+ *   java -cp /tmp/jvm com.voyageonline.threepane.data.MappedItemStoreCheck catalog.bin 1000000
+ * </pre>
+ */
+public class MappedItemStoreCheck {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MappedItemStoreCheck <file> <item count>");
+            System.exit(1);
+        }
+        final DummyContent source = new DummyContent(Integer.parseInt(args[1]));
+        final File file = new File(args[0]);
+        long startMillis = System.currentTimeMillis();
+        MappedItemStoreWriter.write(source, file);
+        System.out.println("Wrote " + source.getCount() + " items in "
+                + (System.currentTimeMillis() - startMillis) + " ms");
+
+        startMillis = System.currentTimeMillis();
+        final int errors = check(source, MappedItemStore.open(file));
+        System.out.println("Checked " + source.getCount() + " items in "
+                + (System.currentTimeMillis() - startMillis) + " ms: " + errors + " errors");
+        if (errors > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compare {@code store} to {@code expected}.
+     *
+     * @return the number of rows that differ, printing the first few.
+     */
+    private static int check(ItemSource expected, MappedItemStore store) {
+        final int count = expected.getCount();
+        int errors = 0;
+        if (store.getCount() != count) {
+            System.err.println("Count: " + store.getCount() + ", expected " + count);
+            errors++;
+        }
+        final DummyItem[] expectedPage = new DummyItem[ItemRepository.PAGE_SIZE];
+        final DummyItem[] page = new DummyItem[ItemRepository.PAGE_SIZE];
+        for (int start = 0; start < count; start += page.length) {
+            final int loaded = expected.load(start, page.length, expectedPage);
+            if (store.load(start, page.length, page) != loaded) {
+                System.err.println("Short page at " + start);
+                errors++;
+            }
+            for (int i = 0; i < loaded; i++) {
+                final DummyItem item = expectedPage[i];
+                final int position = start + i;
+                final boolean same = page[i] != null && item.id.equals(page[i].id)
+                        && item.content.equals(page[i].content);
+                if (!same || store.indexOf(item.id) != position) {
+                    if (errors < 10) {
+                        System.err.println("Row " + position + ": " + page[i] + " at "
+                                + store.indexOf(item.id) + ", expected " + item);
+                    }
+                    errors++;
+                }
+            }
+        }
+        if (store.indexOf("no such id") != -1) {
+            System.err.println("Found a missing ID");
+            errors++;
+        }
+        return errors;
+    }
+}
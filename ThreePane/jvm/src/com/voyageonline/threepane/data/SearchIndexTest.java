@@ -0,0 +1,195 @@
+package com.voyageonline.threepane.data;
+
+import java.util.Arrays;
+
+/**
+ * Checks of {@link SearchIndex}: exact, prefix and infix matches and their ranking, the
+ * result limit, replacing and truncating items, and cancellation and partial results.
+ * Prints the checks that fail and exits with 1 if any did.
+ *
+ * Runs on a desktop JVM, like the {@link com.voyageonline.threepane.Benchmarks}; from
+ * {@code ThreePane}:
+ * <pre>
+ *   javac -d /tmp/jvm -cp $ANDROID_JAR -sourcepath src:jvm/src \
+ *       jvm/src/com/voyageonline/threepane/data/SearchIndexTest.java
+ *   java -cp /tmp/jvm com.voyageonline.threepane.data.SearchIndexTest
+ * </pre>
+ */
+public class SearchIndexTest {
+    private static final int LIMIT = 100;
+
+    private static int sFailures;
+
+    /** Never cancels; counts the partial results. */
+    private static class CountingProgress implements SearchIndex.Progress {
+        int mPartialResults;
+
+        public boolean isCancelled() {
+            return false;
+        }
+
+        public void onPartialResults(int[] positions) {
+            mPartialResults++;
+        }
+    }
+
+    public static void main(String[] args) {
+        testMatches();
+        testLimit();
+        testPut();
+        testTruncate();
+        testRewrites();
+        testProgress();
+        if (sFailures > 0) {
+            System.out.println(sFailures + " checks FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static SearchIndex createFruitIndex() {
+        final SearchIndex index = new SearchIndex();
+        index.put(0, "Red apple");
+        index.put(1, "Green apple pie");
+        index.put(2, "APPLE");
+        index.put(3, "Pineapple juice");
+        index.put(4, "Applesauce");
+        return index;
+    }
+
+    private static void testMatches() {
+        final SearchIndex index = createFruitIndex();
+        check("document count", index.getDocumentCount() == 5);
+        check("term count", index.getTermCount() == 7);
+        // Exact matches first, then prefix, then infix; by position within each.
+        checkQuery(index, "apple", 0, 1, 2, 4, 3);
+        checkQuery(index, "Apple", 0, 1, 2, 4, 3);
+        checkQuery(index, "app", 0, 1, 2, 4, 3);
+        // Infix matches need a trigram: shorter tokens only match prefixes.
+        checkQuery(index, "ap", 0, 1, 2, 4);
+        checkQuery(index, "sauce", 4);
+        // Every token must match.
+        checkQuery(index, "apple pie", 1);
+        checkQuery(index, "pie apple", 1);
+        checkQuery(index, "green juice");
+        checkQuery(index, "apple j", 3);
+        checkQuery(index, "red ap", 0);
+        checkQuery(index, "banana");
+        checkQuery(index, "");
+        checkQuery(index, " .,;");
+    }
+
+    private static void testLimit() {
+        final SearchIndex index = createFruitIndex();
+        check("limit", Arrays.equals(
+                index.query("apple", 2, new CountingProgress()), new int[] {0, 1}));
+        check("no limit", index.query("apple", 0, new CountingProgress()).length == 0);
+    }
+
+    private static void testPut() {
+        final SearchIndex index = createFruitIndex();
+        check("put changed", index.put(2, "Banana"));
+        checkQuery(index, "apple", 0, 1, 4, 3);
+        checkQuery(index, "banana", 2);
+        check("put unchanged", !index.put(2, "BANANA"));
+        check("put same terms", !index.put(1, "pie, apple, green"));
+        checkQuery(index, "apple pie", 1);
+        try {
+            index.put(6, "Cherry");
+            check("put past the end throws", false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        index.put(5, "Cherry");
+        checkQuery(index, "cherry", 5);
+    }
+
+    private static void testTruncate() {
+        final SearchIndex index = createFruitIndex();
+        index.truncate(3);
+        check("truncated count", index.getDocumentCount() == 3);
+        checkQuery(index, "apple", 0, 1, 2);
+        checkQuery(index, "juice");
+        index.truncate(5);
+        check("truncate to more", index.getDocumentCount() == 3);
+        index.put(3, "Apple juice");
+        checkQuery(index, "juice", 3);
+        index.truncate(0);
+        checkQuery(index, "apple");
+    }
+
+    /** Replace many items with longer content, so that the forward index is compacted. */
+    private static void testRewrites() {
+        final SearchIndex index = new SearchIndex();
+        final int count = 2000;
+        for (int i = 0; i < count; i++) {
+            index.put(i, "item " + i);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < count; i++) {
+                index.put(i, "item " + i + " round" + round + ((i % 2 == 0) ? " even" : ""));
+            }
+        }
+        checkQuery(index, "1999 round2", 1999);
+        checkQuery(index, "round1");
+        final int[] even = index.query("even", count, new CountingProgress());
+        boolean allEven = even.length == count / 2;
+        for (int i = 0; i < even.length && allEven; i++) {
+            allEven = even[i] == i * 2;
+        }
+        check("rewritten items", allEven);
+    }
+
+    private static void testProgress() {
+        final SearchIndex index = new SearchIndex();
+        // Enough items for several chunks of the scan.
+        final int count = 200000;
+        for (int i = 0; i < count; i++) {
+            index.put(i, (i % 1000 == 999) ? "item last" : "item");
+        }
+        final CountingProgress progress = new CountingProgress();
+        final int[] results = index.query("item last", LIMIT, progress);
+        check("partial results", progress.mPartialResults > 0);
+        check("results after partial results", results != null && results.length == LIMIT
+                && results[0] == 999 && results[LIMIT - 1] == LIMIT * 1000 - 1);
+
+        final int[] partials = new int[1];
+        final SearchIndex.Progress cancelling = new SearchIndex.Progress() {
+            public boolean isCancelled() {
+                return partials[0] > 0;
+            }
+
+            public void onPartialResults(int[] positions) {
+                partials[0]++;
+            }
+        };
+        check("cancelled midway", index.query("item", LIMIT, cancelling) == null);
+        check("cancelled after one partial result", partials[0] == 1);
+        final SearchIndex.Progress cancelled = new SearchIndex.Progress() {
+            public boolean isCancelled() {
+                return true;
+            }
+
+            public void onPartialResults(int[] positions) {
+                partials[0]++;
+            }
+        };
+        check("cancelled before", index.query("item", LIMIT, cancelled) == null);
+    }
+
+    private static void checkQuery(SearchIndex index, String query, int... expected) {
+        final int[] positions = index.query(query, LIMIT, new CountingProgress());
+        if (!Arrays.equals(positions, expected)) {
+            System.out.println("FAILED: \"" + query + "\": " + Arrays.toString(positions)
+                    + ", expected " + Arrays.toString(expected));
+            sFailures++;
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        if (!passed) {
+            System.out.println("FAILED: " + name);
+            sFailures++;
+        }
+    }
+}
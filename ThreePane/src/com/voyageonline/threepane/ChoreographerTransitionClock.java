@@ -0,0 +1,52 @@
+package com.voyageonline.threepane;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * The default {@link TransitionClock}: {@link System#nanoTime}, and the frames of
+ * {@link Choreographer}.  Must be used on a thread with a looper, normally the UI thread.
+ */
+public class ChoreographerTransitionClock implements TransitionClock,
+        Choreographer.FrameCallback {
+    private final ArrayList<FrameCallback> mCallbacks = new ArrayList<FrameCallback>();
+    private FrameCallback[] mRunning = new FrameCallback[4];
+
+    public long nanoTime() {
+        // Same time base as the Choreographer frame times.
+        return System.nanoTime();
+    }
+
+    public void postFrameCallback(FrameCallback callback) {
+        if (mCallbacks.contains(callback)) {
+            return;
+        }
+        if (mCallbacks.isEmpty()) {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+        mCallbacks.add(callback);
+    }
+
+    public void removeFrameCallback(FrameCallback callback) {
+        mCallbacks.remove(callback);
+        if (mCallbacks.isEmpty()) {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /** Run the callbacks posted for this frame; the ones they post wait for the next one. */
+    public void doFrame(long frameTimeNanos) {
+        final int count = mCallbacks.size();
+        if (mRunning.length < count) {
+            mRunning = new FrameCallback[count * 2];
+        }
+        mCallbacks.toArray(mRunning);
+        mCallbacks.clear();
+        for (int i = 0; i < count; i++) {
+            final FrameCallback callback = mRunning[i];
+            mRunning[i] = null;
+            callback.doFrame(frameTimeNanos);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.voyageonline.threepane;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.LruCache;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Process-wide LRU cache of loaded items, keyed by item ID and bounded by the approximate
+ * size of the items in bytes.
+ *
+ * Filled by {@link ItemDetailLoader} and {@link DetailPrefetcher}, so that going back and forth
+ * between the list and an item, or rotating the device, doesn't reload it.  Shrinks itself
+ * when the system asks the app to trim memory.  Safe to use from any thread.
+ */
+class DetailCache implements ComponentCallbacks2 {
+    /** Maximum total size of the cached items. */
+    private static final int MAX_BYTES = 512 * 1024;
+
+    /** Approximate fixed cost of an item: the objects themselves and the cache entry. */
+    private static final int ITEM_OVERHEAD_BYTES = 96;
+
+    private static DetailCache sInstance;
+
+    private final LruCache<String, DummyItem> mCache = new LruCache<String, DummyItem>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String id, DummyItem item) {
+            return getSizeInBytes(item);
+        }
+    };
+
+    /** Items dropped by {@link #trimToSize}, which {@link LruCache} doesn't count. */
+    private int mTrimmedCount;
+
+    private DetailCache() {
+    }
+
+    public static synchronized DetailCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DetailCache();
+            context.getApplicationContext().registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    /** @return the approximate heap size of an item, in bytes. */
+    static int getSizeInBytes(DummyItem item) {
+        int chars = 0;
+        if (item.id != null) {
+            chars += item.id.length();
+        }
+        if (item.content != null) {
+            chars += item.content.length();
+        }
+        return ITEM_OVERHEAD_BYTES + chars * 2;
+    }
+
+    /** @return the cached item, or null. */
+    public DummyItem get(String id) {
+        return (id == null) ? null : mCache.get(id);
+    }
+
+    public void put(DummyItem item) {
+        if (item != null && item.id != null) {
+            mCache.put(item.id, item);
+        }
+    }
+
+    public int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    public int getMissCount() {
+        return mCache.missCount();
+    }
+
+    public synchronized int getEvictionCount() {
+        return mCache.evictionCount() + mTrimmedCount;
+    }
+
+    /** @return the total size of the cached items, in bytes. */
+    public int getSizeInBytes() {
+        return mCache.size();
+    }
+
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // We're likely to be killed, or the system is about to kill others; don't hold on
+            // to anything.
+            mCache.evictAll();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(MAX_BYTES / 2);
+        }
+    }
+
+    /**
+     * Drop the least recently used items until the cache is no larger than {@code maxBytes}.
+     * ({@link LruCache#trimToSize} isn't public before API 17.)
+     */
+    private synchronized void trimToSize(int maxBytes) {
+        // The snapshot is ordered from least to most recently used.
+        for (String id : mCache.snapshot().keySet()) {
+            if (mCache.size() <= maxBytes) {
+                break;
+            }
+            if (mCache.remove(id) != null) {
+                mTrimmedCount++;
+            }
+        }
+    }
+
+    public void onLowMemory() {
+        mCache.evictAll();
+    }
+
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    @Override
+    public String toString() {
+        return "DetailCache[bytes=" + getSizeInBytes() + " hits=" + getHitCount()
+                + " misses=" + getMissCount() + " evictions=" + getEvictionCount() + "]";
+    }
+}
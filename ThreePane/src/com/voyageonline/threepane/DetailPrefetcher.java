@@ -0,0 +1,66 @@
+package com.voyageonline.threepane;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+
+import com.voyageonline.threepane.data.ItemRepository;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Loads items ahead of time into the {@link DetailCache}, so that the detail pane can show an
+ * item as soon as it's selected instead of waiting for {@link ItemDetailLoader}.
+ *
+ * Used by {@link UIControllerBase} for the rows the user is about to select: the focused or
+ * pressed one, and the ones next to the selection.  All methods must be called on the UI
+ * thread.
+ */
+class DetailPrefetcher {
+    private final Context mContext;
+    private final Handler mHandler = new Handler();
+    private final DetailCache mCache;
+
+    /** IDs being loaded. */
+    private final Set<String> mPendingIds = new HashSet<String>();
+
+    public DetailPrefetcher(Context context) {
+        mContext = context.getApplicationContext();
+        mCache = DetailCache.getInstance(context);
+    }
+
+    /**
+     * Start loading the item in the background, unless it's already loaded or being loaded.
+     */
+    public void prefetch(final String id) {
+        if (id == null || mCache.get(id) != null || !mPendingIds.add(id)) {
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                final DummyItem item = ItemRepository.findById(mContext, id);
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (mPendingIds.remove(id)) {
+                            mCache.put(item);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** @return the prefetched item, or null if it hasn't been loaded. */
+    public DummyItem get(String id) {
+        return mCache.get(id);
+    }
+
+    /**
+     * Ignore loads in flight.  Items already loaded stay in the {@link DetailCache}.
+     */
+    public void clear() {
+        mPendingIds.clear();
+    }
+}
@@ -0,0 +1,15 @@
+package com.voyageonline.threepane;
+
+import android.support.v4.app.Fragment;
+
+/**
+ * Implemented by activities that host fragments managed by a {@link UIControllerBase}.
+ *
+ * Fragments call {@link #onInstallFragment} in {@link Fragment#onActivityCreated} and
+ * {@link #onUninstallFragment} in {@link Fragment#onDestroyView}.
+ */
+public interface FragmentInstallable {
+    public void onInstallFragment(Fragment fragment);
+
+    public void onUninstallFragment(Fragment fragment);
+}
@@ -0,0 +1,189 @@
+package com.voyageonline.threepane;
+
+import java.util.ArrayList;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentTransaction;
+import android.view.Choreographer;
+
+/**
+ * Runs {@link PendingTransaction}s, batching the ones scheduled within a frame into a single
+ * {@link FragmentTransaction}.
+ *
+ * Operations that cancel out are dropped before they reach the {@link FragmentManager}: removing
+ * a fragment that's still waiting to be added drops both, and so does attaching a fragment
+ * that's waiting to be detached (or the other way around).
+ *
+ * Asynchronous by default: the batch is committed on the next frame, and the
+ * {@link FragmentManager} runs it when it gets to it.  In synchronous mode (for tests) each
+ * transaction is committed and executed right away.  Must be used on the UI thread.
+ */
+class FragmentTransactionScheduler {
+    private final FragmentManager mFragmentManager;
+
+    /** Operations waiting for the next frame. */
+    private final ArrayList<PendingTransaction.Op> mOps = new ArrayList<PendingTransaction.Op>();
+    private int mTransition = FragmentTransaction.TRANSIT_NONE;
+
+    private boolean mSynchronous;
+    private boolean mFrameScheduled;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        public void doFrame(long frameTimeNanos) {
+            mFrameScheduled = false;
+            flush();
+        }
+    };
+
+    public FragmentTransactionScheduler(FragmentManager fragmentManager) {
+        mFragmentManager = fragmentManager;
+    }
+
+    /**
+     * Commit and execute each transaction as soon as it's scheduled, instead of on the next
+     * frame.  Scheduled operations are run first.
+     */
+    public void setSynchronous(boolean synchronous) {
+        mSynchronous = synchronous;
+        if (synchronous) {
+            flush();
+        }
+    }
+
+    public void schedule(PendingTransaction transaction) {
+        for (PendingTransaction.Op op : transaction.mOps) {
+            append(op);
+        }
+        if (transaction.mTransition != FragmentTransaction.TRANSIT_NONE) {
+            mTransition = transaction.mTransition;
+        }
+        if (mSynchronous) {
+            flush();
+            mFragmentManager.executePendingTransactions();
+        } else if (!mFrameScheduled && !mOps.isEmpty()) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * @return true if {@code fragment} is waiting to be added.  It's not known to the
+     *     {@link FragmentManager} yet, nor installed.
+     */
+    public boolean isPendingAdd(Fragment fragment) {
+        return indexOf(PendingTransaction.OP_ADD, fragment) >= 0;
+    }
+
+    /**
+     * @return the last fragment of the given class waiting to be added, or null.
+     */
+    public Fragment getPendingAdd(Class<? extends Fragment> fragmentClass) {
+        for (int i = mOps.size() - 1; i >= 0; i--) {
+            final PendingTransaction.Op op = mOps.get(i);
+            if (op.mCommand == PendingTransaction.OP_ADD && fragmentClass.isInstance(op.mFragment)) {
+                return op.mFragment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Commit the scheduled operations now.
+     */
+    public void flush() {
+        if (mFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+        if (mOps.isEmpty()) {
+            return;
+        }
+        final FragmentTransaction ft = mFragmentManager.beginTransaction();
+        for (PendingTransaction.Op op : mOps) {
+            switch (op.mCommand) {
+                case PendingTransaction.OP_ADD:
+                    ft.add(op.mContainerId, op.mFragment);
+                    break;
+                case PendingTransaction.OP_REMOVE:
+                    // Remove try/catch when b/4981556 is fixed (framework bug)
+                    try {
+                        ft.remove(op.mFragment);
+                    } catch (IllegalStateException ex) {
+                    }
+                    break;
+                case PendingTransaction.OP_REPLACE:
+                    ft.replace(op.mContainerId, op.mFragment);
+                    break;
+                case PendingTransaction.OP_ATTACH:
+                    ft.attach(op.mFragment);
+                    break;
+                case PendingTransaction.OP_DETACH:
+                    ft.detach(op.mFragment);
+                    break;
+            }
+        }
+        ft.setTransition(mTransition);
+        mOps.clear();
+        mTransition = FragmentTransaction.TRANSIT_NONE;
+
+        // NB: there should be no cases in which a transaction is committed after
+        // onSaveInstanceState. Unfortunately, the "state loss" check also happens when in
+        // LoaderCallbacks.onLoadFinished, and we wish to perform transactions there. The check
+        // by the framework is conservative and prevents cases where there are transactions
+        // affecting Loader lifecycles - but we have no such cases.
+        ft.commitAllowingStateLoss();
+    }
+
+    /**
+     * Drop the scheduled operations.  Called when the activity is destroyed.
+     */
+    public void cancel() {
+        if (mFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+        mOps.clear();
+    }
+
+    private void append(PendingTransaction.Op op) {
+        switch (op.mCommand) {
+            case PendingTransaction.OP_REMOVE: {
+                // Never added: drop the add and everything done to the fragment since.
+                final int addIndex = indexOf(PendingTransaction.OP_ADD, op.mFragment);
+                if (addIndex >= 0) {
+                    for (int i = mOps.size() - 1; i >= addIndex; i--) {
+                        if (mOps.get(i).mFragment == op.mFragment) {
+                            mOps.remove(i);
+                        }
+                    }
+                    return;
+                }
+                break;
+            }
+            case PendingTransaction.OP_ATTACH:
+            case PendingTransaction.OP_DETACH: {
+                final int inverse = (op.mCommand == PendingTransaction.OP_ATTACH)
+                        ? PendingTransaction.OP_DETACH : PendingTransaction.OP_ATTACH;
+                final int index = indexOf(inverse, op.mFragment);
+                if (index >= 0) {
+                    mOps.remove(index);
+                    return;
+                }
+                break;
+            }
+        }
+        mOps.add(op);
+    }
+
+    /** @return the index of the last operation {@code command} on {@code fragment}, or -1. */
+    private int indexOf(int command, Fragment fragment) {
+        for (int i = mOps.size() - 1; i >= 0; i--) {
+            final PendingTransaction.Op op = mOps.get(i);
+            if (op.mCommand == command && op.mFragment == fragment) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -16,11 +16,9 @@ public class ItemDetailActivity extends FragmentActivity {
         getActionBar().setDisplayHomeAsUpEnabled(true);
 
         if (savedInstanceState == null) {
-            Bundle arguments = new Bundle();
-            arguments.putString(ItemDetailFragment.ARG_ITEM_ID,
-                    getIntent().getStringExtra(ItemDetailFragment.ARG_ITEM_ID));
-            ItemDetailFragment fragment = new ItemDetailFragment();
-            fragment.setArguments(arguments);
+            final String itemId = getIntent().getStringExtra(ItemDetailFragment.ARG_ITEM_ID);
+            ItemDetailFragment fragment = ItemDetailFragment.newInstance(itemId,
+                    DetailCache.getInstance(this).get(itemId));
             getSupportFragmentManager().beginTransaction()
                     .add(R.id.item_detail_container, fragment)
                     .commit();
@@ -4,35 +4,131 @@ import com.voyageonline.threepane.dummy.DummyContent;
 
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.Loader;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-public class ItemDetailFragment extends Fragment {
+public class ItemDetailFragment extends Fragment
+        implements LoaderManager.LoaderCallbacks<DummyContent.DummyItem> {
 
     public static final String ARG_ITEM_ID = "item_id";
 
+    private static final int LOADER_ID = 1;
+
     DummyContent.DummyItem mItem;
 
+    private TextView mDetailView;
+
     public ItemDetailFragment() {
     }
 
-    @Override
-    public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        if (getArguments().containsKey(ARG_ITEM_ID)) {
-            mItem = DummyContent.ITEM_MAP.get(getArguments().getString(ARG_ITEM_ID));
-        }
+    /**
+     * @param item the item if it's already loaded (e.g. by {@link DetailPrefetcher}), in which
+     *     case it's shown right away, or null to load it.
+     */
+    public static ItemDetailFragment newInstance(String itemId, DummyContent.DummyItem item) {
+        final ItemDetailFragment fragment = new ItemDetailFragment();
+        final Bundle arguments = new Bundle();
+        arguments.putString(ARG_ITEM_ID, itemId);
+        fragment.setArguments(arguments);
+        fragment.mItem = item;
+        return fragment;
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
         View rootView = inflater.inflate(R.layout.fragment_item_detail, container, false);
-        if (mItem != null) {
-            ((TextView) rootView.findViewById(R.id.item_detail)).setText(mItem.content);
-        }
+        mDetailView = (TextView) rootView.findViewById(R.id.item_detail);
         return rootView;
     }
+
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        updateDetailView(); // Now that the view is in its container.
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        if (mItem == null && getArguments() != null
+                && getArguments().containsKey(ARG_ITEM_ID)) {
+            getLoaderManager().initLoader(LOADER_ID, getArguments(), this);
+        }
+        if (getActivity() instanceof FragmentInstallable) {
+            ((FragmentInstallable) getActivity()).onInstallFragment(this);
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        if (getActivity() instanceof FragmentInstallable) {
+            ((FragmentInstallable) getActivity()).onUninstallFragment(this);
+        }
+        mDetailView = null;
+        super.onDestroyView();
+    }
+
+    /** @return the item shown, or null if it's not loaded. */
+    public DummyContent.DummyItem getItem() {
+        return mItem;
+    }
+
+    /** @return the ID of the item shown, or null. */
+    public String getItemId() {
+        return (getArguments() != null) ? getArguments().getString(ARG_ITEM_ID) : null;
+    }
+
+    /**
+     * Show another item in place, without a fragment transaction.
+     *
+     * @param item the item if it's already loaded, or null to load it.
+     */
+    public void bind(String itemId, DummyContent.DummyItem item) {
+        if (itemId.equals(getItemId())) {
+            return;
+        }
+        getArguments().putString(ARG_ITEM_ID, itemId);
+        mItem = item;
+        updateDetailView();
+        if (item != null) {
+            getLoaderManager().destroyLoader(LOADER_ID);
+        } else {
+            getLoaderManager().restartLoader(LOADER_ID, getArguments(), this);
+        }
+    }
+
+    /**
+     * Stop loading the item, dropping any load in flight.
+     */
+    public void cancelLoading() {
+        getLoaderManager().destroyLoader(LOADER_ID);
+    }
+
+    public Loader<DummyContent.DummyItem> onCreateLoader(int id, Bundle args) {
+        return new ItemDetailLoader(getActivity(), args.getString(ARG_ITEM_ID));
+    }
+
+    public void onLoadFinished(Loader<DummyContent.DummyItem> loader,
+            DummyContent.DummyItem item) {
+        mItem = item;
+        updateDetailView();
+    }
+
+    public void onLoaderReset(Loader<DummyContent.DummyItem> loader) {
+        mItem = null;
+    }
+
+    private void updateDetailView() {
+        if (mDetailView != null) {
+            mDetailView.setText((mItem != null) ? mItem.content : null);
+            if (mItem != null) {
+                ThreePaneLayout.notifyContentChanged(mDetailView);
+            }
+        }
+    }
 }
@@ -0,0 +1,63 @@
+package com.voyageonline.threepane;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.voyageonline.threepane.data.ItemRepository;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Looks up a single item in the background, going through the {@link DetailCache}.
+ */
+class ItemDetailLoader extends AsyncTaskLoader<DummyItem> {
+    private final String mItemId;
+    private DummyItem mItem;
+
+    public ItemDetailLoader(Context context, String itemId) {
+        super(context);
+        mItemId = itemId;
+    }
+
+    @Override
+    public DummyItem loadInBackground() {
+        final DetailCache cache = DetailCache.getInstance(getContext());
+        DummyItem item = cache.get(mItemId);
+        if (item == null) {
+            item = ItemRepository.findById(getContext(), mItemId);
+            cache.put(item);
+        }
+        return item;
+    }
+
+    @Override
+    public void deliverResult(DummyItem item) {
+        if (isReset()) {
+            return;
+        }
+        mItem = item;
+        if (isStarted()) {
+            super.deliverResult(item);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mItem != null) {
+            deliverResult(mItem);
+        } else {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mItem = null;
+    }
+}
@@ -2,11 +2,19 @@ package com.voyageonline.threepane;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.NavUtils;
+import android.view.Menu;
 import android.view.MenuItem;
+import android.widget.SearchView;
 
-public class ItemListActivity extends FragmentActivity {
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+import com.voyageonline.threepane.data.CatalogImporter;
+
+public class ItemListActivity extends FragmentActivity implements FragmentInstallable {
 
 	private boolean mTwoPane;
 	private UIControllerBase mUIController;
@@ -21,6 +29,7 @@ public class ItemListActivity extends FragmentActivity {
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
+		StartupTimer.begin();
 		initUIController();
 		super.onCreate(savedInstanceState);
 		getActionBar().setDisplayHomeAsUpEnabled(true);
@@ -39,6 +48,64 @@ public class ItemListActivity extends FragmentActivity {
 			mUIController.open(viewContext, messageId);
 		}
 		mUIController.onActivityCreated();
+		CatalogImporter.importFeeds(this);
+	}
+
+	@Override
+	protected void onSaveInstanceState(Bundle outState) {
+		mUIController.onSaveInstanceState(outState);
+		super.onSaveInstanceState(outState);
+	}
+
+	@Override
+	protected void onDestroy() {
+		mUIController.onActivityDestroy();
+		super.onDestroy();
+	}
+
+	@Override
+	public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+		super.dump(prefix, fd, writer, args);
+		mUIController.dump(prefix, writer);
+	}
+
+	public void onInstallFragment(Fragment fragment) {
+		mUIController.onInstallFragment(fragment);
+	}
+
+	public void onUninstallFragment(Fragment fragment) {
+		mUIController.onUninstallFragment(fragment);
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.item_list, menu);
+		final MenuItem searchItem = menu.findItem(R.id.search);
+		final SearchView searchView = (SearchView) searchItem.getActionView();
+		// Searched as the user types; each keystroke cancels the previous query.
+		searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+			public boolean onQueryTextChange(String newText) {
+				mUIController.onSearchQueryChanged(newText);
+				return true;
+			}
+
+			public boolean onQueryTextSubmit(String query) {
+				mUIController.onSearchQueryChanged(query);
+				searchView.clearFocus();
+				return true;
+			}
+		});
+		searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+			public boolean onMenuItemActionExpand(MenuItem item) {
+				return true;
+			}
+
+			public boolean onMenuItemActionCollapse(MenuItem item) {
+				mUIController.onSearchQueryChanged(null);
+				return true;
+			}
+		});
+		return true;
 	}
 
 	@Override
@@ -0,0 +1,343 @@
+package com.voyageonline.threepane;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.voyageonline.threepane.data.ItemRepository;
+import com.voyageonline.threepane.data.ListDiff;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Adapter for the item lists, backed by an {@link ItemRepository}.
+ *
+ * Also listens to the list's scroll position so that the repository keeps only the pages
+ * around the viewport.  Rows whose page is still loading are shown empty and bound when the
+ * page arrives.
+ *
+ * Rows are recycled through {@link ViewHolder}s, and binding a recycled row doesn't allocate:
+ * item rows show the item's content as is, and the header text is built in a buffer owned by
+ * its holder.  Scrolling still allocates whenever a page is loaded: the page's array, its items
+ * and their strings are read from the source, and the load and its delivery are posted as
+ * {@link Runnable}s.  There are two row types: an optional header (see
+ * {@link #setHeaderTitle}) and items.
+ *
+ * When the items change, only the visible rows whose content changed are rebound; if items
+ * were inserted, removed or moved, the list is reset but kept scrolled to the same item.
+ *
+ * Until there's a repository, the adapter can show cached items instead (see
+ * {@link #setCachedItems}), so that the list isn't empty while the repository is opened.
+ * The rows in view are saved along with the scroll position by {@link #saveListState}, and
+ * shown that way by {@link #restoreListState}.
+ */
+class ItemListAdapter extends BaseAdapter implements AbsListView.OnScrollListener,
+        ItemRepository.Listener {
+
+    static final int VIEW_TYPE_HEADER = 0;
+    static final int VIEW_TYPE_ITEM = 1;
+    private static final int VIEW_TYPE_COUNT = 2;
+
+    private final LayoutInflater mInflater;
+    private ItemRepository mRepository;
+
+    /** Items shown while there's no repository.  See {@link #setCachedItems} */
+    private DummyItem[] mCachedItems = NO_ITEMS;
+
+    /** Item position of the first of {@link #mCachedItems} */
+    private int mCachedStart;
+
+    /** Number of items shown while there's no repository. */
+    private int mCachedCount;
+
+    private static final DummyItem[] NO_ITEMS = new DummyItem[0];
+
+    /** The list showing this adapter, if any.  See {@link #onItemsChanged} */
+    private ListView mListView;
+
+    /** Title of the header row, or null if there's no header. */
+    private CharSequence mHeaderTitle;
+
+    /**
+     * Views of a row, kept in its tag.
+     */
+    private static class ViewHolder {
+        TextView mText;
+
+        /** Text of the header row.  See {@link #bindHeader} */
+        char[] mChars;
+    }
+
+    public ItemListAdapter(Context context) {
+        mInflater = LayoutInflater.from(context);
+    }
+
+    /**
+     * Set the repository to show, or null to show nothing (e.g. while it's being loaded).
+     */
+    public void setRepository(ItemRepository repository) {
+        if (mRepository != null) {
+            mRepository.setListener(null);
+        }
+        mRepository = repository;
+        if (mRepository != null) {
+            mRepository.setListener(this);
+            mCachedItems = NO_ITEMS;
+            mCachedStart = 0;
+            mCachedCount = 0;
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Show {@code items} until a repository is set.  Ignored once there's a repository.
+     */
+    public void setCachedItems(DummyItem[] items) {
+        setCachedItems(items, 0, (items == null) ? 0 : items.length);
+    }
+
+    /**
+     * Show {@code count} items, of which {@code items} starting at item position {@code start},
+     * until a repository is set.  The other rows are shown empty.  Ignored once there's a
+     * repository.
+     */
+    public void setCachedItems(DummyItem[] items, int start, int count) {
+        if (mRepository != null) {
+            return;
+        }
+        mCachedItems = (items == null) ? NO_ITEMS : items;
+        mCachedStart = start;
+        mCachedCount = Math.max(count, start + mCachedItems.length);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Save the scroll position of the list showing this adapter, and the items in view.
+     */
+    public void saveListState(UiStateSnapshot.ListState out) {
+        out.mItemCount = getItemCount();
+        if (mListView == null || mListView.getChildCount() == 0) {
+            return;
+        }
+        out.mFirstPosition = mListView.getFirstVisiblePosition();
+        out.mFirstTop = mListView.getChildAt(0).getTop() - mListView.getPaddingTop();
+
+        // Keep the items in view from the first one, up to the first that isn't loaded.
+        final int start = Math.max(0, getItemPosition(out.mFirstPosition));
+        final int end = Math.min(getItemCount(),
+                getItemPosition(mListView.getLastVisiblePosition()) + 1);
+        int loaded = 0;
+        while (start + loaded < end && getItemAt(start + loaded) != null) {
+            loaded++;
+        }
+        final DummyItem[] rows = new DummyItem[loaded];
+        for (int i = 0; i < loaded; i++) {
+            rows[i] = getItemAt(start + i);
+        }
+        out.mRowsStart = start;
+        out.mRows = rows;
+    }
+
+    /**
+     * Show the items saved by {@link #saveListState} until a repository is set, and scroll the
+     * list to where it was.
+     */
+    public void restoreListState(UiStateSnapshot.ListState state) {
+        setCachedItems(state.mRows, state.mRowsStart, state.mItemCount);
+        if (mListView != null) {
+            mListView.setSelectionFromTop(state.mFirstPosition, state.mFirstTop);
+        }
+    }
+
+    /**
+     * Set the list showing this adapter, or null when its view is destroyed.
+     */
+    public void setListView(ListView listView) {
+        mListView = listView;
+    }
+
+    /**
+     * Show a header row with the given title and the item count, or no header if null.
+     */
+    public void setHeaderTitle(CharSequence title) {
+        mHeaderTitle = title;
+        notifyDataSetChanged();
+    }
+
+    private int getHeaderCount() {
+        return (mHeaderTitle != null) ? 1 : 0;
+    }
+
+    private int getItemCount() {
+        return (mRepository != null) ? mRepository.getCount() : mCachedCount;
+    }
+
+    /** @return the item at {@code position} in the repository, or in the cached items. */
+    private DummyItem getItemAt(int position) {
+        if (mRepository != null) {
+            return mRepository.getItem(position);
+        }
+        final int index = position - mCachedStart;
+        return (index >= 0 && index < mCachedItems.length) ? mCachedItems[index] : null;
+    }
+
+    /** @return the position of the row in the repository. */
+    int getItemPosition(int position) {
+        return position - getHeaderCount();
+    }
+
+    public int getCount() {
+        return getHeaderCount() + getItemCount();
+    }
+
+    /** @return the item at the given row, or null for the header or a row still loading. */
+    public DummyItem getItem(int position) {
+        if (getItemViewType(position) != VIEW_TYPE_ITEM) {
+            return null;
+        }
+        return getItemAt(getItemPosition(position));
+    }
+
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return VIEW_TYPE_COUNT;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return (position < getHeaderCount()) ? VIEW_TYPE_HEADER : VIEW_TYPE_ITEM;
+    }
+
+    @Override
+    public boolean areAllItemsEnabled() {
+        return mHeaderTitle == null;
+    }
+
+    @Override
+    public boolean isEnabled(int position) {
+        return getItemViewType(position) == VIEW_TYPE_ITEM;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        final int viewType = getItemViewType(position);
+        View view = convertView;
+        final ViewHolder holder;
+        if (view == null) {
+            holder = new ViewHolder();
+            if (viewType == VIEW_TYPE_HEADER) {
+                view = mInflater.inflate(R.layout.list_header, parent, false);
+                holder.mText = (TextView) view.findViewById(R.id.list_header);
+            } else {
+                view = mInflater.inflate(android.R.layout.simple_list_item_activated_1,
+                        parent, false);
+                holder.mText = (TextView) view.findViewById(android.R.id.text1);
+            }
+            view.setTag(holder);
+        } else {
+            holder = (ViewHolder) view.getTag();
+        }
+
+        if (viewType == VIEW_TYPE_HEADER) {
+            bindHeader(holder);
+        } else {
+            final DummyItem item = getItemAt(getItemPosition(position));
+            holder.mText.setText((item != null) ? item.content : null);
+        }
+        return view;
+    }
+
+    /**
+     * Show "title (count)" in the header, building the text in the holder's buffer.
+     */
+    private void bindHeader(ViewHolder holder) {
+        final CharSequence title = mHeaderTitle;
+        final int length = title.length() + 13; // " (" + 10 digits + ")"
+        if (holder.mChars == null || holder.mChars.length < length) {
+            holder.mChars = new char[length];
+        }
+        final char[] chars = holder.mChars;
+        int n = 0;
+        for (int i = 0; i < title.length(); i++) {
+            chars[n++] = title.charAt(i);
+        }
+        chars[n++] = ' ';
+        chars[n++] = '(';
+        n = appendInt(chars, n, getItemCount());
+        chars[n++] = ')';
+        holder.mText.setText(chars, 0, n);
+    }
+
+    /**
+     * Write the decimal digits of a non-negative {@code value} at {@code start}.
+     *
+     * @return the index after the last digit.
+     */
+    private static int appendInt(char[] chars, int start, int value) {
+        int end = start;
+        int v = value;
+        do {
+            end++;
+            v /= 10;
+        } while (v != 0);
+        v = value;
+        for (int i = end - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        return end;
+    }
+
+    public void onPageLoaded(int page) {
+        notifyDataSetChanged();
+    }
+
+    public void onItemsChanged(int start, ListDiff diff, boolean countChanged) {
+        if (mListView == null) {
+            notifyDataSetChanged();
+            return;
+        }
+        final int firstVisible = mListView.getFirstVisiblePosition();
+        if (!countChanged && !diff.hasStructuralChanges()) {
+            // Nothing moved: rebind the rows on screen whose content changed.
+            for (int i = 0; i < mListView.getChildCount(); i++) {
+                final int index = getItemPosition(firstVisible + i) - start;
+                if (index >= 0 && index < diff.getNewCount() && diff.isChanged(index)) {
+                    getView(firstVisible + i, mListView.getChildAt(i), mListView);
+                }
+            }
+            return;
+        }
+
+        // Keep the first visible item (or the first one after it that's still there) in place.
+        final View top = mListView.getChildAt(0);
+        final int topOffset = (top != null) ? top.getTop() : 0;
+        int anchor = -1;
+        for (int index = getItemPosition(firstVisible) - start;
+                index >= 0 && index < diff.getOldCount() && anchor < 0; index++) {
+            anchor = diff.getNewPosition(index);
+        }
+        notifyDataSetChanged();
+        if (anchor >= 0) {
+            mListView.setSelectionFromTop(anchor + start + getHeaderCount(), topOffset);
+        }
+    }
+
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+            int totalItemCount) {
+        if (mRepository != null) {
+            mRepository.setViewport(Math.max(0, getItemPosition(firstVisibleItem)),
+                    visibleItemCount);
+        }
+    }
+
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+    }
+}
@@ -1,30 +1,36 @@
 package com.voyageonline.threepane;
 
-import android.R;
-import android.app.Activity;
 import android.os.Bundle;
-import android.support.v4.app.ListFragment;
+import android.support.v4.content.Loader;
 import android.view.View;
-import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
-import com.voyageonline.threepane.dummy.DummyContent;
+import com.voyageonline.threepane.data.FirstPageCache;
+import com.voyageonline.threepane.data.ItemRepository;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
 
-public class ItemListFragment extends ListFragment {
-
-    private static final String STATE_ACTIVATED_POSITION = "activated_position";
+public class ItemListFragment extends ItemListFragmentBase {
 
     private Callbacks mCallbacks = sDummyCallbacks;
-    private int mActivatedPosition = ListView.INVALID_POSITION;
+
+    /** Set when the list's state is restored; its rows are then shown rather than the cache. */
+    private boolean mListStateRestored;
 
     public interface Callbacks {
 
-        public void onItemSelected(String id);
+        /** Called when an item is selected, to list its children. */
+        public void onParentSelected(String id, String title);
+
+        /** Called when the item is likely to be selected soon: it's focused or pressed. */
+        public void onItemPreviewed(String id);
     }
 
     private static Callbacks sDummyCallbacks = new Callbacks() {
 
-        public void onItemSelected(String id) {
+        public void onParentSelected(String id, String title) {
+        }
+
+        public void onItemPreviewed(String id) {
         }
     };
 
@@ -34,27 +40,33 @@ public class ItemListFragment extends ListFragment {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setListAdapter(new ArrayAdapter<DummyContent.DummyItem>(getActivity(),
-                R.layout.simple_list_item_activated_1,
-                R.id.text1,
-                DummyContent.ITEMS));
+        // Show the items cached by the last launch until the repository is loaded.
+        FirstPageCache.read(getActivity(), new FirstPageCache.Callback() {
+            public void onFirstPageRead(DummyItem[] items) {
+                if (!mListStateRestored) {
+                    mAdapter.setCachedItems(items);
+                }
+            }
+        });
     }
 
     @Override
-    public void onViewCreated(View view, Bundle savedInstanceState) {
-        super.onViewCreated(view, savedInstanceState);
-        if (savedInstanceState != null && savedInstanceState
-                .containsKey(STATE_ACTIVATED_POSITION)) {
-            setActivatedPosition(savedInstanceState.getInt(STATE_ACTIVATED_POSITION));
-        }
+    public void restoreListState(UiStateSnapshot.ListState state) {
+        super.restoreListState(state);
+        mListStateRestored = true;
     }
 
-    public void setCallback(Callbacks activity) {
-        if (!(activity instanceof Callbacks)) {
-            throw new IllegalStateException("Activity must implement fragment's callbacks.");
-        }
+    /**
+     * Set the callbacks, or null to stop receiving them.
+     */
+    public void setCallback(Callbacks callbacks) {
+        mCallbacks = (callbacks == null) ? sDummyCallbacks : callbacks;
+    }
 
-        mCallbacks = (Callbacks) activity;
+    @Override
+    public void onLoadFinished(Loader<ItemRepository> loader, ItemRepository repository) {
+        super.onLoadFinished(loader, repository);
+        StartupTimer.markListLoaded();
     }
 
     @Override
@@ -66,30 +78,14 @@ public class ItemListFragment extends ListFragment {
     @Override
     public void onListItemClick(ListView listView, View view, int position, long id) {
         super.onListItemClick(listView, view, position, id);
-        mCallbacks.onItemSelected(DummyContent.ITEMS.get(position).id);
-    }
-
-    @Override
-    public void onSaveInstanceState(Bundle outState) {
-        super.onSaveInstanceState(outState);
-        if (mActivatedPosition != ListView.INVALID_POSITION) {
-            outState.putInt(STATE_ACTIVATED_POSITION, mActivatedPosition);
+        final DummyItem item = mAdapter.getItem(position);
+        if (item != null) {
+            mCallbacks.onParentSelected(item.id, item.content);
         }
     }
 
-    public void setActivateOnItemClick(boolean activateOnItemClick) {
-        getListView().setChoiceMode(activateOnItemClick
-                ? ListView.CHOICE_MODE_SINGLE
-                : ListView.CHOICE_MODE_NONE);
-    }
-
-    public void setActivatedPosition(int position) {
-        if (position == ListView.INVALID_POSITION) {
-            getListView().setItemChecked(mActivatedPosition, false);
-        } else {
-            getListView().setItemChecked(position, true);
-        }
-
-        mActivatedPosition = position;
+    @Override
+    protected void onItemPreviewed(String id) {
+        mCallbacks.onItemPreviewed(id);
     }
 }
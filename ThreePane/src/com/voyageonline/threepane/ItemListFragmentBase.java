@@ -0,0 +1,169 @@
+package com.voyageonline.threepane;
+
+import android.os.Bundle;
+import android.support.v4.app.ListFragment;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.Loader;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ListView;
+
+import com.voyageonline.threepane.data.ItemRepository;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Base class for the item lists: loads the items of a repository into an
+ * {@link ItemListAdapter}, previews the items the user is about to pick, and saves and restores
+ * the list's state.
+ */
+abstract class ItemListFragmentBase extends ListFragment
+        implements LoaderManager.LoaderCallbacks<ItemRepository> {
+
+    protected static final int LOADER_ID = 1;
+
+    private int mActivatedPosition = ListView.INVALID_POSITION;
+
+    protected ItemRepository mRepository;
+    protected ItemListAdapter mAdapter;
+
+    /** Item position to load first; that of the restored scroll position, if any. */
+    private int mInitialPosition;
+
+    /** @return the ID of the item whose children are listed, or null for the root items. */
+    public String getParentId() {
+        return null;
+    }
+
+    /** Called when an item is likely to be selected soon.  See {@link #previewItem} */
+    protected abstract void onItemPreviewed(String id);
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mAdapter = new ItemListAdapter(getActivity());
+        setListAdapter(mAdapter);
+    }
+
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        getListView().setOnScrollListener(mAdapter);
+        mAdapter.setListView(getListView());
+        getListView().setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                previewItem(position);
+            }
+
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+        getListView().setOnTouchListener(new View.OnTouchListener() {
+            public boolean onTouch(View v, MotionEvent event) {
+                if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                    previewItem(getListView().pointToPosition(
+                            (int) event.getX(), (int) event.getY()));
+                }
+                return false;
+            }
+        });
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        // Installed first, so that a restored scroll position decides which page is loaded.
+        if (getActivity() instanceof FragmentInstallable) {
+            ((FragmentInstallable) getActivity()).onInstallFragment(this);
+        }
+        startLoading();
+    }
+
+    @Override
+    public void onDestroyView() {
+        if (getActivity() instanceof FragmentInstallable) {
+            ((FragmentInstallable) getActivity()).onUninstallFragment(this);
+        }
+        mAdapter.setListView(null);
+        super.onDestroyView();
+    }
+
+    /**
+     * Start loading the list, if it isn't already.
+     */
+    protected void startLoading() {
+        getLoaderManager().initLoader(LOADER_ID, null, this);
+    }
+
+    /**
+     * Stop loading the list, dropping any load in flight.
+     */
+    public void cancelLoading() {
+        getLoaderManager().destroyLoader(LOADER_ID);
+    }
+
+    public Loader<ItemRepository> onCreateLoader(int id, Bundle args) {
+        return new ItemRepositoryLoader(getActivity(), mInitialPosition, getParentId());
+    }
+
+    public void onLoadFinished(Loader<ItemRepository> loader, ItemRepository repository) {
+        mRepository = repository;
+        mAdapter.setRepository(repository);
+    }
+
+    public void onLoaderReset(Loader<ItemRepository> loader) {
+        mRepository = null;
+        mAdapter.setRepository(null);
+    }
+
+    /**
+     * Preview the item at {@code position}, if there's one loaded there.
+     */
+    protected final void previewItem(int position) {
+        if (position < 0 || position >= mAdapter.getCount()) {
+            return;
+        }
+        final DummyItem item = mAdapter.getItem(position);
+        if (item != null) {
+            onItemPreviewed(item.id);
+        }
+    }
+
+    /**
+     * Save the selection and scroll position, and the items in view.  See
+     * {@link UIControllerBase#onSaveInstanceState}
+     */
+    public void saveListState(UiStateSnapshot.ListState out) {
+        out.mActivatedPosition = mActivatedPosition;
+        mAdapter.saveListState(out);
+    }
+
+    /**
+     * Show the list as saved by {@link #saveListState}.  The items in view are shown right away,
+     * and the page they're on is the first to be loaded.  Must be called before the loader is
+     * started.
+     */
+    public void restoreListState(UiStateSnapshot.ListState state) {
+        mInitialPosition = state.mRowsStart;
+        mAdapter.restoreListState(state);
+        if (state.mActivatedPosition != ListView.INVALID_POSITION) {
+            setActivatedPosition(state.mActivatedPosition);
+        }
+    }
+
+    public void setActivateOnItemClick(boolean activateOnItemClick) {
+        getListView().setChoiceMode(activateOnItemClick
+                ? ListView.CHOICE_MODE_SINGLE
+                : ListView.CHOICE_MODE_NONE);
+    }
+
+    public void setActivatedPosition(int position) {
+        if (position == ListView.INVALID_POSITION) {
+            getListView().setItemChecked(mActivatedPosition, false);
+        } else {
+            getListView().setItemChecked(position, true);
+        }
+
+        mActivatedPosition = position;
+    }
+}
@@ -0,0 +1,89 @@
+package com.voyageonline.threepane;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.voyageonline.threepane.data.FirstPageCache;
+import com.voyageonline.threepane.data.ItemRepository;
+
+/**
+ * Opens an {@link ItemRepository} over the children of an item, or over the roots of the
+ * catalog, and loads the page the list starts at in the background: the first page, or the
+ * one the list was scrolled to when its state was saved.
+ *
+ * The repository is kept by the loader, so it survives configuration changes along with the
+ * pages it has loaded.  It's cancelled when the loader is reset.
+ *
+ * When it's the first page of the roots, its items are also saved to the
+ * {@link FirstPageCache}, for the next cold start.
+ */
+class ItemRepositoryLoader extends AsyncTaskLoader<ItemRepository> {
+    private final int mInitialPosition;
+    private final String mParentId;
+    private ItemRepository mRepository;
+
+    /**
+     * @param initialPosition position of an item on the page to load.
+     * @param parentId ID of the item whose children to load, or null for the roots.
+     */
+    public ItemRepositoryLoader(Context context, int initialPosition, String parentId) {
+        super(context);
+        mInitialPosition = initialPosition;
+        mParentId = parentId;
+    }
+
+    @Override
+    public ItemRepository loadInBackground() {
+        final ItemRepository repository = ItemRepository.createForParent(getContext(), mParentId);
+        if (repository.getCount() > 0) {
+            final int page = Math.min(mInitialPosition, repository.getCount() - 1)
+                    / ItemRepository.PAGE_SIZE;
+            repository.loadPage(page);
+            if (page == 0 && mParentId == null) {
+                FirstPageCache.write(getContext(), repository);
+            }
+        }
+        return repository;
+    }
+
+    @Override
+    public void deliverResult(ItemRepository repository) {
+        if (isReset()) {
+            repository.cancel();
+            return;
+        }
+        mRepository = repository;
+        if (isStarted()) {
+            super.deliverResult(repository);
+        }
+    }
+
+    @Override
+    public void onCanceled(ItemRepository repository) {
+        repository.cancel();
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mRepository != null) {
+            deliverResult(mRepository);
+        } else {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mRepository != null) {
+            mRepository.cancel();
+            mRepository = null;
+        }
+    }
+}
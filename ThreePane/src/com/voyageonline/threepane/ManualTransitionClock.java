@@ -0,0 +1,78 @@
+package com.voyageonline.threepane;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link TransitionClock} whose time only moves when {@link #advance} is called, e.g. to run
+ * transitions in a test or a benchmark as fast as possible and the same way every time.
+ *
+ * Doesn't touch the framework; must be used on one thread.
+ */
+public class ManualTransitionClock implements TransitionClock {
+    /** Frame interval of a 60Hz display. */
+    public static final long DEFAULT_FRAME_NANOS = 1000000000L / 60;
+
+    private final ArrayList<FrameCallback> mCallbacks = new ArrayList<FrameCallback>();
+    private FrameCallback[] mRunning = new FrameCallback[4];
+    private long mNowNanos;
+    private int mFrameCount;
+
+    public long nanoTime() {
+        return mNowNanos;
+    }
+
+    public void postFrameCallback(FrameCallback callback) {
+        if (!mCallbacks.contains(callback)) {
+            mCallbacks.add(callback);
+        }
+    }
+
+    public void removeFrameCallback(FrameCallback callback) {
+        mCallbacks.remove(callback);
+    }
+
+    /** @return whether a frame callback is waiting for the next frame. */
+    public boolean hasPendingFrame() {
+        return !mCallbacks.isEmpty();
+    }
+
+    /** @return the number of frames run so far. */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Move time forward by {@code nanos}, then run a frame.  Callbacks posted while it runs wait
+     * for the next one.
+     */
+    public void advance(long nanos) {
+        mNowNanos += nanos;
+        mFrameCount++;
+        final int count = mCallbacks.size();
+        if (mRunning.length < count) {
+            mRunning = new FrameCallback[count * 2];
+        }
+        mCallbacks.toArray(mRunning);
+        mCallbacks.clear();
+        for (int i = 0; i < count; i++) {
+            final FrameCallback callback = mRunning[i];
+            mRunning[i] = null;
+            callback.doFrame(mNowNanos);
+        }
+    }
+
+    /**
+     * Run frames {@link #DEFAULT_FRAME_NANOS} apart until no callback is waiting, or at most
+     * {@code maxFrames}.
+     *
+     * @return the number of frames run.
+     */
+    public int runUntilIdle(int maxFrames) {
+        int frames = 0;
+        while (frames < maxFrames && hasPendingFrame()) {
+            advance(DEFAULT_FRAME_NANOS);
+            frames++;
+        }
+        return frames;
+    }
+}
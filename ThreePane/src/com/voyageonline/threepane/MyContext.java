@@ -1,5 +1,41 @@
 package com.voyageonline.threepane;
 
+/**
+ * What the sub-item list shows: the children of the item selected in the item list.  Passed
+ * to {@link UIControllerBase#open}.
+ */
 public class MyContext {
+    private final String mParentId;
+    private final String mTitle;
 
+    private MyContext(String parentId, String title) {
+        mParentId = parentId;
+        mTitle = title;
+    }
+
+    /**
+     * @param parentId ID of the selected item.  Must not be null.
+     * @param title shown above its children, or null.
+     */
+    public static MyContext forParent(String parentId, String title) {
+        if (parentId == null) {
+            throw new IllegalArgumentException();
+        }
+        return new MyContext(parentId, title);
+    }
+
+    /** @return the ID of the item whose children are listed. */
+    public String getParentId() {
+        return mParentId;
+    }
+
+    /** @return the title of the list, or null. */
+    public String getTitle() {
+        return mTitle;
+    }
+
+    @Override
+    public String toString() {
+        return "MyContext{" + mParentId + "}";
+    }
 }
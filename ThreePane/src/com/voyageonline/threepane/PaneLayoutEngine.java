@@ -0,0 +1,206 @@
+package com.voyageonline.threepane;
+
+import java.util.Arrays;
+
+/**
+ * Computes where the panes of a {@link ThreePaneLayout} go in each of its states.
+ *
+ * Panes sit side by side, left to right.  A state shows a contiguous range of them: the panes
+ * before the range are pushed off the left edge, the ones after it off the right edge, every
+ * visible pane but the last gets its own width, and the last one fills the rest.
+ *
+ * The positions and widths for every state are computed once per container width (see
+ * {@link #setContainerWidth}), so a transition only interpolates between two rows of the table,
+ * whatever the number of panes.
+ *
+ * Doesn't touch views; must be used on one thread.
+ */
+public class PaneLayoutEngine {
+    private final int mPaneCount;
+    private final int mStateCount;
+
+    /** Width of each pane when it's not the last visible one. */
+    private final int[] mPaneWidths;
+
+    /** First and last visible pane of each state, or -1 if it's not defined. */
+    private final int[] mFirstVisible;
+    private final int[] mLastVisible;
+
+    // The table.  Index: state * mPaneCount + pane
+    private final int[] mLefts;
+    private final int[] mWidths;
+
+    /** Visible pane flags of each state.  See {@link #getPaneFlag} */
+    private final int[] mVisiblePanes;
+
+    private int mContainerWidth;
+    private boolean mDirty = true;
+
+    /** Incremented every time the table is recomputed.  See {@link #getGeneration} */
+    private int mGeneration;
+
+    public PaneLayoutEngine(int paneCount, int stateCount) {
+        mPaneCount = paneCount;
+        mStateCount = stateCount;
+        mPaneWidths = new int[paneCount];
+        mFirstVisible = new int[stateCount];
+        mLastVisible = new int[stateCount];
+        Arrays.fill(mFirstVisible, -1);
+        Arrays.fill(mLastVisible, -1);
+        mLefts = new int[paneCount * stateCount];
+        mWidths = new int[paneCount * stateCount];
+        mVisiblePanes = new int[stateCount];
+    }
+
+    public int getPaneCount() {
+        return mPaneCount;
+    }
+
+    public int getStateCount() {
+        return mStateCount;
+    }
+
+    /**
+     * @return the flag of {@code pane} in {@link #getVisiblePanes}.  The leftmost pane has the
+     *     highest bit, like {@link ThreePaneLayout#PANE_LEFT}.
+     */
+    public int getPaneFlag(int pane) {
+        return 1 << (mPaneCount - 1 - pane);
+    }
+
+    /** Set the width of {@code pane} when it's shown but isn't the last visible pane. */
+    public void setPaneWidth(int pane, int width) {
+        if (mPaneWidths[pane] != width) {
+            mPaneWidths[pane] = width;
+            mDirty = true;
+        }
+    }
+
+    public int getPaneWidth(int pane) {
+        return mPaneWidths[pane];
+    }
+
+    /** Define {@code state} as showing the panes from {@code firstPane} to {@code lastPane}. */
+    public void setState(int state, int firstPane, int lastPane) {
+        if (firstPane < 0 || firstPane > lastPane || lastPane >= mPaneCount) {
+            throw new IllegalArgumentException("Bad pane range " + firstPane + "-" + lastPane);
+        }
+        mFirstVisible[state] = firstPane;
+        mLastVisible[state] = lastPane;
+        mDirty = true;
+    }
+
+    public boolean isStateDefined(int state) {
+        return state >= 0 && state < mStateCount && mFirstVisible[state] >= 0;
+    }
+
+    /** Set the width of the container.  The table is recomputed only if it changes. */
+    public void setContainerWidth(int width) {
+        if (mContainerWidth != width) {
+            mContainerWidth = width;
+            mDirty = true;
+        }
+    }
+
+    public int getContainerWidth() {
+        return mContainerWidth;
+    }
+
+    /**
+     * @return a number that changes whenever the table does, to tell when things computed from
+     *     it are stale.
+     */
+    public int getGeneration() {
+        ensureComputed();
+        return mGeneration;
+    }
+
+    /** @return the left edge of {@code pane} in {@code state}, relative to the container. */
+    public int getPaneLeft(int state, int pane) {
+        ensureComputed();
+        return mLefts[state * mPaneCount + pane];
+    }
+
+    public int getPaneWidth(int state, int pane) {
+        ensureComputed();
+        return mWidths[state * mPaneCount + pane];
+    }
+
+    public int getVisiblePanes(int state) {
+        ensureComputed();
+        return mVisiblePanes[state];
+    }
+
+    public boolean isPaneVisible(int state, int pane) {
+        return (getVisiblePanes(state) & getPaneFlag(pane)) != 0;
+    }
+
+    /** Copy the left edges and widths of all the panes in {@code state}. */
+    public void getPositions(int state, int[] outLefts, int[] outWidths) {
+        ensureComputed();
+        System.arraycopy(mLefts, state * mPaneCount, outLefts, 0, mPaneCount);
+        System.arraycopy(mWidths, state * mPaneCount, outWidths, 0, mPaneCount);
+    }
+
+    /**
+     * Interpolate pane positions, e.g. from where they are now to the ones of a state.
+     * Values are truncated like {@link android.animation.IntEvaluator} does.
+     */
+    public static void interpolate(float fraction, int[] fromLefts, int[] fromWidths,
+            int[] toLefts, int[] toWidths, int[] outLefts, int[] outWidths) {
+        for (int i = 0; i < outLefts.length; i++) {
+            outLefts[i] = (int) (fromLefts[i] + fraction * (toLefts[i] - fromLefts[i]));
+            outWidths[i] = (int) (fromWidths[i] + fraction * (toWidths[i] - fromWidths[i]));
+        }
+    }
+
+    private void ensureComputed() {
+        if (!mDirty) {
+            return;
+        }
+        mDirty = false;
+        mGeneration++;
+        final int paneCount = mPaneCount;
+        for (int state = 0; state < mStateCount; state++) {
+            final int base = state * paneCount;
+            final int first = mFirstVisible[state];
+            final int last = mLastVisible[state];
+            if (first < 0) {
+                for (int pane = 0; pane < paneCount; pane++) {
+                    mLefts[base + pane] = 0;
+                    mWidths[base + pane] = 0;
+                }
+                mVisiblePanes[state] = 0;
+                continue;
+            }
+            // The last visible pane fills what the others leave.
+            int fillWidth = mContainerWidth;
+            for (int pane = first; pane < last; pane++) {
+                fillWidth -= mPaneWidths[pane];
+            }
+            int left = 0;
+            for (int pane = 0; pane < first; pane++) {
+                left -= mPaneWidths[pane];
+            }
+            int visiblePanes = 0;
+            for (int pane = 0; pane < paneCount; pane++) {
+                final int width;
+                if (pane < last) {
+                    width = mPaneWidths[pane];
+                } else if (pane == last) {
+                    width = fillWidth;
+                } else {
+                    // Off to the right: as wide as it'll be when shown next to the pane before.
+                    width = mContainerWidth - mPaneWidths[pane - 1];
+                }
+                mLefts[base + pane] = left;
+                mWidths[base + pane] = Math.max(0, width);
+                left += mWidths[base + pane];
+                if (pane >= first && pane <= last) {
+                    visiblePanes |= getPaneFlag(pane);
+                }
+            }
+            mVisiblePanes[state] = visiblePanes;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.voyageonline.threepane;
+
+import java.util.ArrayList;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentTransaction;
+
+/**
+ * A set of fragment operations to be run by a {@link FragmentTransactionScheduler}.
+ *
+ * Mirrors the parts of {@link FragmentTransaction} the UI controllers use.  Nothing happens
+ * until it's passed to {@link UIControllerBase#commitFragmentTransaction}.
+ */
+class PendingTransaction {
+    static final int OP_ADD = 1;
+    static final int OP_REMOVE = 2;
+    static final int OP_REPLACE = 3;
+    static final int OP_ATTACH = 4;
+    static final int OP_DETACH = 5;
+
+    static final class Op {
+        final int mCommand;
+        final int mContainerId;
+        final Fragment mFragment;
+
+        Op(int command, int containerId, Fragment fragment) {
+            mCommand = command;
+            mContainerId = containerId;
+            mFragment = fragment;
+        }
+    }
+
+    final ArrayList<Op> mOps = new ArrayList<Op>();
+    int mTransition = FragmentTransaction.TRANSIT_NONE;
+
+    public PendingTransaction add(int containerId, Fragment fragment) {
+        mOps.add(new Op(OP_ADD, containerId, fragment));
+        return this;
+    }
+
+    public PendingTransaction remove(Fragment fragment) {
+        mOps.add(new Op(OP_REMOVE, 0, fragment));
+        return this;
+    }
+
+    public PendingTransaction replace(int containerId, Fragment fragment) {
+        mOps.add(new Op(OP_REPLACE, containerId, fragment));
+        return this;
+    }
+
+    public PendingTransaction attach(Fragment fragment) {
+        mOps.add(new Op(OP_ATTACH, 0, fragment));
+        return this;
+    }
+
+    public PendingTransaction detach(Fragment fragment) {
+        mOps.add(new Op(OP_DETACH, 0, fragment));
+        return this;
+    }
+
+    public PendingTransaction setTransition(int transition) {
+        mTransition = transition;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return mOps.isEmpty();
+    }
+}
@@ -0,0 +1,67 @@
+package com.voyageonline.threepane;
+
+/**
+ * The objects removed and not yet gone, e.g. fragments between
+ * {@link PendingTransaction#remove} and their uninstall.  See
+ * {@link UIControllerBase#removeFragment}.
+ *
+ * Compares by identity.  It only ever holds a few objects, so it's a plain array: adding,
+ * finding and removing one scans it, and nothing is allocated once it's big enough.
+ *
+ * Plain Java; must be used on one thread.
+ */
+public class RemovalList<T> {
+    private Object[] mItems = new Object[4];
+    private int mSize;
+
+    /** Add {@code item}, if it's not in the list yet.  @return false if it was. */
+    public boolean add(T item) {
+        if (indexOf(item) >= 0) {
+            return false;
+        }
+        if (mSize == mItems.length) {
+            final Object[] items = new Object[mSize * 2];
+            System.arraycopy(mItems, 0, items, 0, mSize);
+            mItems = items;
+        }
+        mItems[mSize++] = item;
+        return true;
+    }
+
+    public boolean contains(T item) {
+        return indexOf(item) >= 0;
+    }
+
+    /** Remove {@code item}.  @return false if it wasn't in the list. */
+    public boolean remove(T item) {
+        final int index = indexOf(item);
+        if (index < 0) {
+            return false;
+        }
+        // Order doesn't matter; move the last one into the hole.
+        mSize--;
+        mItems[index] = mItems[mSize];
+        mItems[mSize] = null;
+        return true;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mItems[i] = null;
+        }
+        mSize = 0;
+    }
+
+    private int indexOf(Object item) {
+        for (int i = 0; i < mSize; i++) {
+            if (mItems[i] == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,64 @@
+package com.voyageonline.threepane;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Logs how long a cold start takes, from {@link ItemListActivity#onCreate} to:
+ * <ul>
+ * <li>the first frame, which shows only the item list; and</li>
+ * <li>the point where the app is interactive: the deferred panes are set up and the list is
+ * backed by its repository rather than the cached first page.</li>
+ * </ul>
+ *
+ * Markers are logged under {@link #TAG}.  UI thread only.
+ */
+final class StartupTimer {
+    static final String TAG = "StartupTimer";
+
+    /** Time {@link #begin} was called, or -1 if the markers have been logged. */
+    private static long sStartMillis = -1;
+
+    private static boolean sPanesReady;
+    private static boolean sListLoaded;
+
+    private StartupTimer() {
+    }
+
+    /** Start timing.  Called at the start of {@link ItemListActivity#onCreate}. */
+    static void begin() {
+        sStartMillis = SystemClock.uptimeMillis();
+        sPanesReady = false;
+        sListLoaded = false;
+    }
+
+    /** Called when the first frame has been drawn. */
+    static void markFirstFrame() {
+        log("first frame");
+    }
+
+    /** Called when the panes deferred past the first frame have been set up. */
+    static void markPanesReady() {
+        sPanesReady = true;
+        maybeMarkInteractive();
+    }
+
+    /** Called when the item list has been given its repository. */
+    static void markListLoaded() {
+        sListLoaded = true;
+        maybeMarkInteractive();
+    }
+
+    private static void maybeMarkInteractive() {
+        if (sPanesReady && sListLoaded) {
+            log("interactive");
+            sStartMillis = -1;
+        }
+    }
+
+    private static void log(String marker) {
+        if (sStartMillis >= 0) {
+            Log.i(TAG, marker + ": " + (SystemClock.uptimeMillis() - sStartMillis) + " ms");
+        }
+    }
+}
@@ -1,60 +1,144 @@
 package com.voyageonline.threepane;
 
-import android.R;
-import android.app.Activity;
 import android.os.Bundle;
-import android.support.v4.app.ListFragment;
 import android.view.View;
-import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
-import com.voyageonline.threepane.dummy.DummyContent;
+import com.voyageonline.threepane.data.ItemRepository;
+import com.voyageonline.threepane.data.SearchEngine;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
 
-public class SubItemListFragment extends ListFragment {
+/**
+ * The middle pane's list.  Shows the children of the item in its {@link MyContext}, or the
+ * results of a search (see {@link #setSearchQuery}) as they're found.  The parent is shown in
+ * the header row.
+ */
+public class SubItemListFragment extends ItemListFragmentBase implements SearchEngine.Listener {
 
-    private static final String STATE_ACTIVATED_POSITION = "activated_position";
+    private static final String ARG_PARENT_ID = "parent_id";
+    private static final String ARG_TITLE = "title";
 
     private Callbacks mCallbacks = sDummyCallbacks;
-    private int mActivatedPosition = ListView.INVALID_POSITION;
+
+    /** The search whose results are shown, or null to show the catalog. */
+    private String mSearchQuery;
 
     public interface Callbacks {
 
         public void onItemSelected(String id);
+
+        /**
+         * Called when the item is likely to be selected soon: it's focused or pressed, or it's
+         * next to the selected item.
+         */
+        public void onItemPreviewed(String id);
     }
 
     private static Callbacks sDummyCallbacks = new Callbacks() {
 
         public void onItemSelected(String id) {
         }
+
+        public void onItemPreviewed(String id) {
+        }
     };
 
     public SubItemListFragment() {
     }
 
+    /**
+     * @return a fragment listing the children of the parent in {@code listContext}.
+     */
+    public static SubItemListFragment newInstance(MyContext listContext) {
+        final SubItemListFragment fragment = new SubItemListFragment();
+        final Bundle arguments = new Bundle();
+        arguments.putString(ARG_PARENT_ID, listContext.getParentId());
+        arguments.putString(ARG_TITLE, listContext.getTitle());
+        fragment.setArguments(arguments);
+        return fragment;
+    }
+
+    @Override
+    public String getParentId() {
+        return (getArguments() != null) ? getArguments().getString(ARG_PARENT_ID) : null;
+    }
+
+    private String getTitle() {
+        return (getArguments() != null) ? getArguments().getString(ARG_TITLE) : null;
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setListAdapter(new ArrayAdapter<DummyContent.DummyItem>(getActivity(),
-                R.layout.simple_list_item_activated_1,
-                R.id.text1,
-                DummyContent.ITEMS));
+        mAdapter.setHeaderTitle(getTitle());
+    }
+
+    @Override
+    protected void startLoading() {
+        if (mSearchQuery == null) {
+            super.startLoading();
+        }
+    }
+
+    /**
+     * Set the callbacks, or null to stop receiving them.
+     */
+    public void setCallback(Callbacks callbacks) {
+        mCallbacks = (callbacks == null) ? sDummyCallbacks : callbacks;
     }
 
+    /**
+     * Stop loading the list, dropping any load or search in flight.
+     */
     @Override
-    public void onViewCreated(View view, Bundle savedInstanceState) {
-        super.onViewCreated(view, savedInstanceState);
-        if (savedInstanceState != null && savedInstanceState
-                .containsKey(STATE_ACTIVATED_POSITION)) {
-            setActivatedPosition(savedInstanceState.getInt(STATE_ACTIVATED_POSITION));
+    public void cancelLoading() {
+        super.cancelLoading();
+        if (mSearchQuery != null) {
+            SearchEngine.getInstance(getActivity()).cancel();
+            setSearchRepository(null);
+        }
+    }
+
+    /**
+     * Show the results of searching for {@code query} instead of the children, updated as
+     * they're found, or go back to the children if null.  Each new query cancels the previous
+     * one, so this can be called on each keystroke.
+     */
+    public void setSearchQuery(String query) {
+        if ((query == null) ? mSearchQuery == null : query.equals(mSearchQuery)) {
+            return;
         }
+        final boolean wasSearching = (mSearchQuery != null);
+        mSearchQuery = query;
+        mAdapter.setHeaderTitle((query != null) ? query : getTitle());
+        final SearchEngine engine = SearchEngine.getInstance(getActivity());
+        if (query == null) {
+            engine.cancel();
+            setSearchRepository(null);
+            startLoading();
+            return;
+        }
+        if (!wasSearching) {
+            getLoaderManager().destroyLoader(LOADER_ID);
+        }
+        engine.query(query, this);
     }
 
-    public void setCallback(Callbacks activity) {
-        if (!(activity instanceof Callbacks)) {
-            throw new IllegalStateException("Activity must implement fragment's callbacks.");
+    public void onResults(String query, ItemRepository results, boolean complete) {
+        if (!query.equals(mSearchQuery) || mAdapter == null) {
+            results.cancel();
+            return;
         }
+        setSearchRepository(results);
+    }
 
-        mCallbacks = (Callbacks) activity;
+    /** Show {@code results}, dropping the results shown before. */
+    private void setSearchRepository(ItemRepository results) {
+        if (mRepository != null) {
+            mRepository.cancel();
+        }
+        mRepository = results;
+        mAdapter.setRepository(results);
     }
 
     @Override
@@ -66,30 +150,17 @@ public class SubItemListFragment extends ListFragment {
     @Override
     public void onListItemClick(ListView listView, View view, int position, long id) {
         super.onListItemClick(listView, view, position, id);
-        mCallbacks.onItemSelected(DummyContent.ITEMS.get(position).id);
-    }
-
-    @Override
-    public void onSaveInstanceState(Bundle outState) {
-        super.onSaveInstanceState(outState);
-        if (mActivatedPosition != ListView.INVALID_POSITION) {
-            outState.putInt(STATE_ACTIVATED_POSITION, mActivatedPosition);
+        final DummyItem item = mAdapter.getItem(position);
+        if (item != null) {
+            mCallbacks.onItemSelected(item.id);
         }
+        // Newer/older navigation will want these next.
+        previewItem(position - 1);
+        previewItem(position + 1);
     }
 
-    public void setActivateOnItemClick(boolean activateOnItemClick) {
-        getListView().setChoiceMode(activateOnItemClick
-                ? ListView.CHOICE_MODE_SINGLE
-                : ListView.CHOICE_MODE_NONE);
-    }
-
-    public void setActivatedPosition(int position) {
-        if (position == ListView.INVALID_POSITION) {
-            getListView().setItemChecked(mActivatedPosition, false);
-        } else {
-            getListView().setItemChecked(position, true);
-        }
-
-        mActivatedPosition = position;
+    @Override
+    protected void onItemPreviewed(String id) {
+        mCallbacks.onItemPreviewed(id);
     }
 }
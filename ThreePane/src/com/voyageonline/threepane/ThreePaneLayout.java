@@ -16,35 +16,51 @@
 
 package com.voyageonline.threepane;
 
-import android.animation.Animator;
-import android.animation.ObjectAnimator;
-import android.animation.PropertyValuesHolder;
 import android.animation.TimeInterpolator;
 import android.content.Context;
 import android.content.res.Resources;
-import android.os.Parcel;
-import android.os.Parcelable;
+import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
 import android.view.animation.DecelerateInterpolator;
-import android.widget.LinearLayout;
+
+import java.io.PrintWriter;
 
 /**
  * The "three pane" layout used on tablet.
  *
  * This layout can show up to two panes at any given time, and operates in two different modes.
+ * The panes are its direct children; it measures and positions them itself.
  * See {@link #isPaneCollapsible()} for details on the two modes.
  *
+ * Where the panes go in each state is computed by a {@link PaneLayoutEngine}.
+ *
+ * Transitions are animated in one of two ways; see {@link #setAnimationMode}.  Their frame timing
+ * is recorded in {@link #getTransitionStats}, and their time comes from a {@link TransitionClock}
+ * (see {@link #setClock}).  They can also be dragged: right to go back to
+ * {@link #STATE_LEFT_VISIBLE}, left to go to {@link #STATE_RIGHT_VISIBLE} if the right pane has
+ * content; and a running one can be caught and dragged back.
+ *
  * TODO Unit tests, when UX is settled.
  *
  * TODO onVisiblePanesChanged() should be called *AFTER* the animation, not before.
  */
-public class ThreePaneLayout extends LinearLayout {
+public class ThreePaneLayout extends ViewGroup {
+    private static final String TAG = "ThreePaneLayout";
     private static final boolean ANIMATION_DEBUG = false; // DON'T SUBMIT WITH true
 
     private static final int ANIMATION_DURATION = ANIMATION_DEBUG ? 1000 : 150;
+
+    /** Drags starting this close to the left edge are taken at a shallower angle. */
+    private static final int EDGE_SIZE_DIP = 24;
     private static final TimeInterpolator INTERPOLATOR = new DecelerateInterpolator(1.75f);
 
     /** Uninitialized state -- {@link #changePaneState} hasn't been called yet. */
@@ -71,6 +87,15 @@ public class ThreePaneLayout extends LinearLayout {
     public static final int PANE_MIDDLE = 1 << 1;
     public static final int PANE_RIGHT = 1 << 0;
 
+    /** Animate by changing the layout params of the panes on every frame. */
+    public static final int ANIMATION_MODE_LAYOUT = 0;
+
+    /**
+     * Lay the panes out once at their final positions, animate them with translations on
+     * hardware layers, and commit the real layout when the animation ends.
+     */
+    public static final int ANIMATION_MODE_TRANSFORM = 1;
+
     /** Current pane state.  See {@link #changePaneState} */
     private int mPaneState = STATE_UNINITIALIZED;
 
@@ -94,29 +119,169 @@ public class ThreePaneLayout extends LinearLayout {
      */
     private int mMessageListWidth;
 
-    /** Hold last animator to cancel. */
-    private Animator mLastAnimator;
+    /** See {@link #setClock} */
+    private TransitionClock mClock = new ChoreographerTransitionClock();
 
-    /**
-     * Hold last animator listener to cancel.  See {@link #startLayoutAnimation} for why
-     * we need both {@link #mLastAnimator} and {@link #mLastAnimatorListener}
-     */
-    private AnimatorListener mLastAnimatorListener;
+    // The running transition.  See {@link #startTransition}
+    private boolean mTransitionRunning;
+    private long mTransitionStartNanos;
+    private long mTransitionDurationNanos;
+
+    /** Moves the panes on each frame of a transition, by {@link #setTransitionFraction}. */
+    private final TransitionClock.FrameCallback mTransitionRunner =
+            new TransitionClock.FrameCallback() {
+        public void doFrame(long frameTimeNanos) {
+            if (!mTransitionRunning) {
+                return;
+            }
+            final float t = (float) (frameTimeNanos - mTransitionStartNanos)
+                    / mTransitionDurationNanos;
+            if (t >= 1f) {
+                completeTransition();
+                return;
+            }
+            setTransitionFraction(INTERPOLATOR.getInterpolation(Math.max(0f, t)));
+            mClock.postFrameCallback(this);
+        }
+    };
+
+    /** Transition plans by (from state + 1) * (STATE_COUNT + 1) + (to state + 1). */
+    private final TransitionPlan[] mTransitionPlans =
+            new TransitionPlan[(STATE_COUNT + 1) * (STATE_COUNT + 1)];
+
+    // Pane indices in {@link #mLayoutEngine}, left to right
+    private static final int PANE_INDEX_LEFT = 0;
+    private static final int PANE_INDEX_MIDDLE = 1;
+    private static final int PANE_INDEX_RIGHT = 2;
+    private static final int PANE_COUNT = 3;
+
+    /** Number of STATE_*, not counting {@link #STATE_UNINITIALIZED}. */
+    private static final int STATE_COUNT = 3;
 
-    // 2nd index for {@link #changePaneState}
-    private static final int INDEX_VISIBLE = 0;
-    private static final int INDEX_INVISIBLE = 1;
-    private static final int INDEX_GONE = 2;
+    /** Where the panes go in each STATE_*.  Set up in {@link #onFinishInflate}. */
+    private final PaneLayoutEngine mLayoutEngine = new PaneLayoutEngine(PANE_COUNT, STATE_COUNT);
 
-    // Arrays used in {@link #changePaneState}
-    // First index: STATE_*
-    // Second index: INDEX_*
-    private View[][][] mShowHideViews;
+    /** The panes, by pane index. */
+    private View[] mPanes;
+
+    // By pane index: where the panes are laid out.  See {@link #applyLayout}
+    private final int[] mPaneLefts = new int[PANE_COUNT];
+    private final int[] mPaneWidths = new int[PANE_COUNT];
+
+    // Measure specs the panes were last measured with.  See {@link #onMeasure}
+    private final int[] mPaneWidthSpecs = new int[PANE_COUNT];
+    private int mPaneHeightSpec;
+
+    // By pane index: pane positions where the current transition starts and ends.
+    private final int[] mStartLefts = new int[PANE_COUNT];
+    private final int[] mStartWidths = new int[PANE_COUNT];
+    private final int[] mEndLefts = new int[PANE_COUNT];
+    private final int[] mEndWidths = new int[PANE_COUNT];
 
     private Callback mCallback = EmptyCallback.INSTANCE;
 
+    /** See {@link #setAnimationMode} */
+    private int mAnimationMode = ANIMATION_MODE_TRANSFORM;
+
+    /** True while a transition is running in {@link #ANIMATION_MODE_TRANSFORM}. */
+    private boolean mTransforming;
+
+    // By pane index, while transforming: the pane positions they're laid out with, and the ones
+    // being shown.
+    private final int[] mLayoutLefts = new int[PANE_COUNT];
+    private final int[] mLayoutWidths = new int[PANE_COUNT];
+    private final int[] mAnimLefts = new int[PANE_COUNT];
+    private final int[] mAnimWidths = new int[PANE_COUNT];
+
     private boolean mIsSearchResult = false;
 
+    /** See {@link #setPanesOpaque} */
+    private boolean mPanesOpaque;
+
+    // From ViewConfiguration; set in initView()
+    private int mTouchSlop;
+    private int mEdgeSize;
+    private int mMinFlingVelocity;
+    private int mMaxFlingVelocity;
+
+    /** Tracks the current gesture, from its ACTION_DOWN to its ACTION_UP or ACTION_CANCEL. */
+    private VelocityTracker mVelocityTracker;
+    private float mDownX;
+    private float mDownY;
+    private float mLastX;
+    private boolean mDownAtEdge;
+
+    /** True while a drag moves the panes.  See {@link #beginScrub} */
+    private boolean mScrubbing;
+    private int mScrubFromState;
+    private int mScrubToState;
+    private float mScrubFraction;
+    /** How far the finger moves to go from {@link #mScrubFromState} to {@link #mScrubToState}. */
+    private int mScrubDistance;
+    /** {@link #getVisiblePanes} before the drag started */
+    private int mScrubVisiblePanes;
+
+    /** The state the last transition started from, to catch it.  See {@link #catchTransition} */
+    private int mTransitionFromState = STATE_UNINITIALIZED;
+
+    /** See {@link #getTransitionStats} */
+    private final TransitionStats mTransitionStats = new TransitionStats();
+
+    /** The transition being recorded, while {@link #mRecording}. */
+    private final TransitionStats.Record mRecord = new TransitionStats.Record();
+    private boolean mRecording;
+    private long mRecordStartNanos;
+    private boolean mHasLastFrame;
+    private long mLastFrameNanos;
+    private long mFrameIntervalNanos;
+
+    /**
+     * Whether the content asked for by the last {@link #markContentRequested} hasn't been drawn
+     * yet, and when it was asked for.
+     */
+    private boolean mContentRequested;
+    private long mContentRequestNanos;
+    private int mContentFromState;
+    private boolean mContentChanged;
+
+    private TransitionListener mTransitionListener = EmptyTransitionListener.INSTANCE;
+
+    /** Records the frames of a transition; reposts itself until the transition ends. */
+    private final TransitionClock.FrameCallback mFrameRecorder =
+            new TransitionClock.FrameCallback() {
+        public void doFrame(long frameTimeNanos) {
+            if (!mRecording) {
+                return;
+            }
+            if (mHasLastFrame) {
+                final long frameNanos = frameTimeNanos - mLastFrameNanos;
+                final long frameMs = frameNanos / 1000000;
+                mRecord.mFrameCount++;
+                mRecord.mMaxFrameMs = Math.max(mRecord.mMaxFrameMs, frameMs);
+                mRecord.mDroppedFrames += Math.max(0,
+                        (int) ((frameNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos) - 1);
+                mTransitionStats.addFrame(mRecord.mFromState, mRecord.mToState, frameMs);
+            }
+            mHasLastFrame = true;
+            mLastFrameNanos = frameTimeNanos;
+            mClock.postFrameCallback(this);
+        }
+    };
+
+    /** Measures the time to the first frame with new content; see {@link #markContentRequested}. */
+    private final ViewTreeObserver.OnDrawListener mContentDrawListener =
+            new ViewTreeObserver.OnDrawListener() {
+        public void onDraw() {
+            if (!mContentRequested || !mContentChanged || !isRightPaneVisible()) {
+                return;
+            }
+            final long latencyMs = (mClock.nanoTime() - mContentRequestNanos) / 1000000;
+            mContentRequested = false;
+            mTransitionStats.addContentLatency(mContentFromState, STATE_RIGHT_VISIBLE, latencyMs);
+            mTransitionListener.onFirstContentFrame(mContentFromState, latencyMs);
+        }
+    };
+
     public interface Callback {
         /** Called when {@link ThreePaneLayout#getVisiblePanes()} has changed. */
         public void onVisiblePanesChanged(int previousVisiblePanes);
@@ -128,6 +293,28 @@ public class ThreePaneLayout extends LinearLayout {
         public void onVisiblePanesChanged(int previousVisiblePanes) {}
     }
 
+    /** Gets the frame timing of each transition.  See {@link #setTransitionListener}. */
+    public interface TransitionListener {
+        /**
+         * Called when a transition ends, or is interrupted by the next one.  {@code record} is
+         * reused; copy what's needed out of it.
+         */
+        public void onTransitionFinished(TransitionStats.Record record);
+
+        /**
+         * Called on the first frame that shows the new content of the right pane after
+         * {@link ThreePaneLayout#showRightPane}, {@code latencyMs} after it was called.
+         */
+        public void onFirstContentFrame(int fromState, long latencyMs);
+    }
+
+    private static final class EmptyTransitionListener implements TransitionListener {
+        public static final TransitionListener INSTANCE = new EmptyTransitionListener();
+
+        public void onTransitionFinished(TransitionStats.Record record) {}
+        public void onFirstContentFrame(int fromState, long latencyMs) {}
+    }
+
     public ThreePaneLayout(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
         initView();
@@ -145,26 +332,29 @@ public class ThreePaneLayout extends LinearLayout {
 
     /** Perform basic initialization */
     private void initView() {
-        setOrientation(LinearLayout.HORIZONTAL); // Always horizontal
+        final WindowManager wm =
+                (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        final float refreshRate = wm.getDefaultDisplay().getRefreshRate();
+        mFrameIntervalNanos = (long) (1000000000 / ((refreshRate > 0) ? refreshRate : 60));
+
+        final ViewConfiguration configuration = ViewConfiguration.get(getContext());
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mEdgeSize = (int) (EDGE_SIZE_DIP * getResources().getDisplayMetrics().density);
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
     }
 
     @Override
-    protected Parcelable onSaveInstanceState() {
-        SavedState ss = new SavedState(super.onSaveInstanceState());
-        ss.mPaneState = mPaneState;
-        return ss;
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnDrawListener(mContentDrawListener);
     }
 
     @Override
-    protected void onRestoreInstanceState(Parcelable state) {
-        // Called after onFinishInflate()
-        SavedState ss = (SavedState) state;
-        super.onRestoreInstanceState(ss.getSuperState());
-        if (mIsSearchResult) {
-            mInitialPaneState = STATE_RIGHT_VISIBLE;
-        } else {
-            mInitialPaneState = ss.mPaneState;
-        }
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnDrawListener(mContentDrawListener);
+        finishRecording(true);
+        super.onDetachedFromWindow();
     }
 
     @Override
@@ -175,52 +365,32 @@ public class ThreePaneLayout extends LinearLayout {
         mMiddlePane = findViewById(R.id.middle_pane);
         mRightPane = findViewById(R.id.right_pane);
         mConvViewExpandList = true;
-        View[][] stateRightVisible = new View[][] {
-                {
-                    mMiddlePane, mRightPane
-                }, // Visible
-                {
-                    mLeftPane
-                }, // Invisible
-                {
-                    
-                }, // Gone;
-        };
-        View[][] stateRightVisibleHideConvList = new View[][] {
-                {
-                        mRightPane, 
-                }, // Visible
-                {
-                        mMiddlePane, mLeftPane
-                }, // Invisible
-                {}, // Gone;
-        };
-        mShowHideViews = new View[][][] {
-                // STATE_LEFT_VISIBLE
-                {
-                        {
-                           mLeftPane, mMiddlePane
-                        }, // Visible
-                        {
-                            mRightPane
-                        }, // Invisible
-                        {
-                            
-                        }, // Gone
-                },
-                // STATE_RIGHT_VISIBLE
-                mConvViewExpandList ? stateRightVisible : stateRightVisibleHideConvList,
-                // STATE_MIDDLE_EXPANDED
-                {
-                        {}, // Visible
-                        {}, // Invisible
-                        {}, // Gone
-                },
-        };
+        mPanes = new View[] {mLeftPane, mMiddlePane, mRightPane};
 
         mInitialPaneState = STATE_LEFT_VISIBLE;
         mMailboxListWidth = 160;
         mMessageListWidth = 160;
+
+        mLayoutEngine.setPaneWidth(PANE_INDEX_LEFT, mMailboxListWidth);
+        mLayoutEngine.setPaneWidth(PANE_INDEX_MIDDLE, mMessageListWidth);
+        // mailbox list + message list
+        mLayoutEngine.setState(STATE_LEFT_VISIBLE, PANE_INDEX_LEFT, PANE_INDEX_MIDDLE);
+        // message list + message view, or message view only
+        mLayoutEngine.setState(STATE_RIGHT_VISIBLE,
+                mConvViewExpandList ? PANE_INDEX_MIDDLE : PANE_INDEX_RIGHT, PANE_INDEX_RIGHT);
+        // STATE_MIDDLE_EXPANDED is only used when isPaneCollapsible(), which it never is.
+    }
+
+    /**
+     * Go to a state saved from {@link #getPaneState}, without animating.  The pane state is
+     * saved by the UI controller along with the rest of the UI (see {@link UiStateSnapshot}),
+     * not by the view.
+     */
+    public void restorePaneState(int state) {
+        if (mIsSearchResult || state < STATE_LEFT_VISIBLE || state >= STATE_COUNT) {
+            return;
+        }
+        changePaneState(state, false);
     }
 
     public void setIsSearch(boolean isSearch) {
@@ -241,6 +411,65 @@ public class ThreePaneLayout extends LinearLayout {
         mCallback = (callback == null) ? EmptyCallback.INSTANCE : callback;
     }
 
+    /**
+     * Set the time source of transitions, e.g. a {@link ManualTransitionClock} to run them in
+     * virtual time.  A running transition jumps to its end first.
+     */
+    void setClock(TransitionClock clock) {
+        if (mTransitionRunning) {
+            completeTransition();
+        }
+        finishRecording(true);
+        mClock = (clock == null) ? new ChoreographerTransitionClock() : clock;
+    }
+
+    /**
+     * Declare that the content of every pane is opaque, even if the pane views don't say so
+     * (e.g. the fragments draw their own backgrounds).  The parts of the panes covered by the
+     * panes on their right then aren't drawn at all.  Panes whose {@link View#isOpaque} is true
+     * are treated this way anyway.
+     */
+    public void setPanesOpaque(boolean opaque) {
+        mPanesOpaque = opaque;
+        invalidate();
+    }
+
+    /**
+     * Set how transitions are animated: {@link #ANIMATION_MODE_TRANSFORM} (the default) or
+     * {@link #ANIMATION_MODE_LAYOUT}.  Takes effect from the next transition.
+     */
+    void setAnimationMode(int mode) {
+        mAnimationMode = mode;
+    }
+
+    void setTransitionListener(TransitionListener listener) {
+        mTransitionListener = (listener == null) ? EmptyTransitionListener.INSTANCE : listener;
+    }
+
+    /** @return the frame timing of the transitions so far. */
+    public TransitionStats getTransitionStats() {
+        return mTransitionStats;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("ThreePaneLayout state=" + mPaneState + " transforming=" + mTransforming);
+        mTransitionStats.dump(prefix + "  ", writer);
+    }
+
+    /**
+     * Tell the enclosing {@link ThreePaneLayout}, if any, that {@code view} now shows new
+     * content, for {@link TransitionListener#onFirstContentFrame}.
+     */
+    public static void notifyContentChanged(View view) {
+        for (ViewParent parent = view.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent instanceof ThreePaneLayout) {
+                ((ThreePaneLayout) parent).mContentChanged = true;
+                return;
+            }
+        }
+    }
+
     /**
      * Return whether or not the left pane should be collapsible.
      */
@@ -251,9 +480,15 @@ public class ThreePaneLayout extends LinearLayout {
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        mLayoutEngine.setContainerWidth(w - getPaddingLeft() - getPaddingRight());
         if (!mFirstSizeChangedDone) {
             mFirstSizeChangedDone = true;
             onFirstSizeChanged();
+        } else if (mPaneState != STATE_UNINITIALIZED
+                && !mTransitionRunning) {
+            // Lay the current state out again for the new width.
+            mLayoutEngine.getPositions(mPaneState, mEndLefts, mEndWidths);
+            applyLayout(mEndLefts, mEndWidths);
         }
     }
 
@@ -299,6 +534,18 @@ public class ThreePaneLayout extends LinearLayout {
         }
     }
 
+    /**
+     * Start timing new content for the right pane, up to the first frame that shows it.  Must be
+     * called before the content is bound, which may happen right away when it's cached; the
+     * pane is then usually shown with {@link #showRightPane}.
+     */
+    public void markContentRequested() {
+        mContentRequested = true;
+        mContentRequestNanos = mClock.nanoTime();
+        mContentFromState = mPaneState;
+        mContentChanged = false;
+    }
+
     /**
      * Show the right most pane.  (i.e. message view)
      */
@@ -332,61 +579,348 @@ public class ThreePaneLayout extends LinearLayout {
             animate = false;
         }
 
-        final int previousVisiblePanes = getVisiblePanes();
+        if (!mLayoutEngine.isStateDefined(newState)) {
+            throw new IllegalStateException();
+        }
+        startTransition(mPaneState, newState, animate ? ANIMATION_DURATION : 0,
+                getVisiblePanes(), mAnimationMode == ANIMATION_MODE_TRANSFORM);
+        return true;
+    }
+
+    /**
+     * Move the panes from where they're shown now to {@code newState}.
+     *
+     * @param fromState the state the transition is reported to start from.
+     * @param duration the animation duration, or 0 not to animate.
+     * @param previousVisiblePanes passed to {@link Callback#onVisiblePanesChanged}.
+     * @param transform whether to animate in {@link #ANIMATION_MODE_TRANSFORM}.
+     */
+    private void startTransition(int fromState, int newState, int duration,
+            int previousVisiblePanes, boolean transform) {
+        final boolean animate = duration > 0;
         mPaneState = newState;
+        mTransitionFromState = fromState;
+        mScrubbing = false;
+
+        // Start from where the panes are shown now, which may be in the middle of a transition.
+        cancelLastAnimation();
+        finishRecording(true);
+        if (animate) {
+            startRecording(fromState, newState);
+        }
+        getCurrentPositions(mStartLefts, mStartWidths);
+        endTransform();
+
+        mLayoutEngine.setPaneWidth(PANE_INDEX_LEFT, getMailboxListWidth());
+        mLayoutEngine.getPositions(mPaneState, mEndLefts, mEndWidths);
 
         // Animate to the new state.
-        // (We still use animator even if animate == false; we just use 0 duration.)
-        final int totalWidth = getMeasuredWidth();
+        final TransitionPlan plan = getTransitionPlan(fromState, newState);
+        if (!animate) {
+            applyLayout(mEndLefts, mEndWidths);
+            completeTransition();
+        } else {
+            if (transform) {
+                beginTransform();
+            }
+            mTransitionRunning = true;
+            mTransitionStartNanos = mClock.nanoTime();
+            mTransitionDurationNanos = duration * 1000000L;
+            mClock.postFrameCallback(mTransitionRunner);
+        }
+        // Last, as the callback may start another transition.
+        onTransitionStart(plan, previousVisiblePanes);
+    }
 
-        final int expectedMailboxLeft;
-        final int expectedMessageListWidth;
+    /** Show and hide the panes at the start of a transition. */
+    private void onTransitionStart(TransitionPlan plan, int previousVisiblePanes) {
+        setPaneVisibility(plan.mShowPanes, View.VISIBLE);
+
+        // TODO These things, making invisible views and calling the visible pane changed
+        // callback, should really be done at the end of the transition.
+        // However, because we may want to initiate a fragment transaction in the callback but
+        // by the time animation is done, the activity may be stopped (by user's HOME press),
+        // it's not easy to get right.  For now, we just do this before the animation.
+        setPaneVisibility(plan.mHidePanes, View.INVISIBLE);
+        mCallback.onVisiblePanesChanged(previousVisiblePanes);
+    }
 
-        final String animatorLabel; // for debug purpose
+    /** Put the panes at the end of the current transition, and end it. */
+    private void completeTransition() {
+        mTransitionRunning = false;
+        mClock.removeFrameCallback(mTransitionRunner);
+        setTransitionFraction(1f);
+        endTransform();
+        finishRecording(false);
+    }
 
-        setViewWidth(mLeftPane, getMailboxListWidth());
-        setViewWidth(mRightPane, totalWidth - getMessageListWidth());
+    /**
+     * What a transition does, apart from moving the panes from wherever they are.  Made once
+     * per pair of states, and again when the pane table changes.  See
+     * {@link #getTransitionPlan}
+     */
+    private static final class TransitionPlan {
+        /** {@link PaneLayoutEngine#getGeneration} this plan was made for */
+        int mGeneration;
+        /** Panes to make visible and invisible, as flags of {@link #getVisiblePanes}. */
+        int mShowPanes;
+        int mHidePanes;
+        /** Panes visible in either state, which are shown while dragging between them */
+        int mScrubPanes;
+        /** The pane that moves the most, and by how much. */
+        int mLeadPane;
+        int mLeadDistance;
+    }
+
+    private TransitionPlan getTransitionPlan(int fromState, int toState) {
+        final int index = (fromState + 1) * (STATE_COUNT + 1) + (toState + 1);
+        TransitionPlan plan = mTransitionPlans[index];
+        final int generation = mLayoutEngine.getGeneration();
+        if (plan != null && plan.mGeneration == generation) {
+            return plan;
+        }
+        if (plan == null) {
+            plan = new TransitionPlan();
+            mTransitionPlans[index] = plan;
+        }
+        plan.mGeneration = generation;
+        final int allPanes = (1 << PANE_COUNT) - 1;
+        final int fromPanes = mLayoutEngine.isStateDefined(fromState)
+                ? mLayoutEngine.getVisiblePanes(fromState) : 0;
+        plan.mShowPanes = mLayoutEngine.getVisiblePanes(toState);
+        plan.mHidePanes = allPanes & ~plan.mShowPanes;
+        plan.mScrubPanes = fromPanes | plan.mShowPanes;
+        plan.mLeadPane = 0;
+        plan.mLeadDistance = 0;
+        if (mLayoutEngine.isStateDefined(fromState)) {
+            for (int i = 0; i < PANE_COUNT; i++) {
+                final int distance = mLayoutEngine.getPaneLeft(toState, i)
+                        - mLayoutEngine.getPaneLeft(fromState, i);
+                if (Math.abs(distance) > Math.abs(plan.mLeadDistance)) {
+                    plan.mLeadPane = i;
+                    plan.mLeadDistance = distance;
+                }
+            }
+        }
+        return plan;
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (!canDrag()) {
+            return false;
+        }
+        trackVelocity(ev);
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                // Catching a running transition takes the whole gesture.
+                return onDown(ev);
+            case MotionEvent.ACTION_MOVE:
+                return mScrubbing || maybeBeginScrub(ev);
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                endGesture();
+                break;
+        }
+        return false;
+    }
 
-        switch (mPaneState) {
-            case STATE_LEFT_VISIBLE:
-                // mailbox + message list
-                animatorLabel = "moving to [mailbox list + message list]";
-                expectedMailboxLeft = 0;
-                expectedMessageListWidth = totalWidth - getMailboxListWidth();
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        if (!canDrag()) {
+            return super.onTouchEvent(ev);
+        }
+        trackVelocity(ev);
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                // No child took it; keep the gesture in case it's a drag.
+                onDown(ev);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (mScrubbing) {
+                    scrub(ev.getX());
+                } else {
+                    maybeBeginScrub(ev);
+                }
                 break;
-            case STATE_RIGHT_VISIBLE:
-                // message list + message view
-                animatorLabel = "moving to [message list + message view]";
-                expectedMailboxLeft = -getMailboxListWidth();
-                expectedMessageListWidth = getMessageListWidth();
+            case MotionEvent.ACTION_UP:
+                if (mScrubbing) {
+                    settleScrub(true);
+                }
+                endGesture();
                 break;
-            default:
-                throw new IllegalStateException();
-        }
-        setViewWidth(mMiddlePane, expectedMessageListWidth);
-        final View[][] showHideViews = mShowHideViews[mPaneState];
-        final AnimatorListener listener = new AnimatorListener(animatorLabel,
-                showHideViews[INDEX_VISIBLE],
-                showHideViews[INDEX_INVISIBLE],
-                showHideViews[INDEX_GONE],
-                previousVisiblePanes);
-
-        // Animation properties -- mailbox list left and message list width, at the same time.
-        startLayoutAnimation(animate ? ANIMATION_DURATION : 0, listener,
-                PropertyValuesHolder.ofInt(PROP_MAILBOX_LIST_LEFT,
-                        getCurrentMailboxLeft(), expectedMailboxLeft),
-                PropertyValuesHolder.ofInt(PROP_MESSAGE_LIST_WIDTH,
-                        getCurrentMessageListWidth(), expectedMessageListWidth)
-                );
+            case MotionEvent.ACTION_CANCEL:
+                if (mScrubbing) {
+                    settleScrub(false);
+                }
+                endGesture();
+                break;
+        }
         return true;
     }
 
-    private int getMessageListWidth() {
-        if (!mConvViewExpandList && mPaneState == STATE_RIGHT_VISIBLE) {
-            return 0;
+    private boolean canDrag() {
+        return mPaneState != STATE_UNINITIALIZED;
+    }
+
+    private void trackVelocity(MotionEvent ev) {
+        if (ev.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            if (mVelocityTracker == null) {
+                mVelocityTracker = VelocityTracker.obtain();
+            } else {
+                mVelocityTracker.clear();
+            }
+        }
+        if (mVelocityTracker != null) {
+            mVelocityTracker.addMovement(ev);
+        }
+    }
+
+    private void endGesture() {
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    /**
+     * Start tracking a gesture, catching the running transition if any.
+     *
+     * @return true if a transition was caught.
+     */
+    private boolean onDown(MotionEvent ev) {
+        mDownX = ev.getX();
+        mDownY = ev.getY();
+        mLastX = mDownX;
+        mDownAtEdge = mDownX < mEdgeSize;
+        if (mScrubbing) {
+            return true;
+        }
+        if (mTransitionRunning) {
+            return catchTransition();
         }
-        return mMessageListWidth;
+        return false;
     }
+
+    /**
+     * Start dragging if {@code ev} moved far enough horizontally, toward a state.
+     *
+     * @return true if started.
+     */
+    private boolean maybeBeginScrub(MotionEvent ev) {
+        final float dx = ev.getX() - mDownX;
+        final float dy = ev.getY() - mDownY;
+        if (Math.abs(dx) <= mTouchSlop || Math.abs(dx) <= Math.abs(dy) * (mDownAtEdge ? 1 : 2)) {
+            return false;
+        }
+        final int target;
+        if (dx > 0 && mPaneState == STATE_RIGHT_VISIBLE) {
+            target = STATE_LEFT_VISIBLE;
+        } else if (dx < 0 && mPaneState == STATE_LEFT_VISIBLE && hasRightPaneContent()) {
+            target = STATE_RIGHT_VISIBLE;
+        } else {
+            return false;
+        }
+        mLastX = ev.getX();
+        return beginScrub(mPaneState, target, 0f);
+    }
+
+    private boolean hasRightPaneContent() {
+        return (mRightPane instanceof ViewGroup) && ((ViewGroup) mRightPane).getChildCount() > 0;
+    }
+
+    /**
+     * Stop the running transition where it is and let the finger move it, either way.
+     *
+     * @return true if caught.
+     */
+    private boolean catchTransition() {
+        final int from = mTransitionFromState;
+        final int to = mPaneState;
+        if (from == STATE_UNINITIALIZED || from == to) {
+            return false;
+        }
+        final TransitionPlan plan = getTransitionPlan(from, to);
+        if (plan.mLeadDistance == 0) {
+            return false;
+        }
+        // How far along the panes are, judging by the one that moves the most.
+        getCurrentPositions(mStartLefts, mStartWidths);
+        final int fromLeft = mLayoutEngine.getPaneLeft(from, plan.mLeadPane);
+        final float fraction = (float) (mStartLefts[plan.mLeadPane] - fromLeft)
+                / plan.mLeadDistance;
+        return beginScrub(from, to, Math.max(0f, Math.min(1f, fraction)));
+    }
+
+    /**
+     * Start moving the panes with the finger, between {@code fromState} and {@code toState},
+     * in {@link #ANIMATION_MODE_TRANSFORM}.  The panes of both states are shown meanwhile.
+     *
+     * @param fraction where to start between the two states.
+     * @return true if started.
+     */
+    private boolean beginScrub(int fromState, int toState, float fraction) {
+        final TransitionPlan plan = getTransitionPlan(fromState, toState);
+        if (plan.mLeadDistance == 0) {
+            return false;
+        }
+        mScrubVisiblePanes = getVisiblePanes();
+        cancelLastAnimation();
+        finishRecording(true);
+        endTransform();
+
+        mScrubbing = true;
+        mScrubFromState = fromState;
+        mScrubToState = toState;
+        mScrubDistance = plan.mLeadDistance;
+        mLayoutEngine.getPositions(fromState, mStartLefts, mStartWidths);
+        mLayoutEngine.getPositions(toState, mEndLefts, mEndWidths);
+        beginTransform();
+        setPaneVisibility(plan.mScrubPanes, View.VISIBLE);
+        mScrubFraction = fraction;
+        setTransitionFraction(fraction);
+
+        if (getParent() != null) {
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        return true;
+    }
+
+    /** Move the panes with the finger, at {@code x}. */
+    private void scrub(float x) {
+        mScrubFraction += (x - mLastX) / mScrubDistance;
+        mScrubFraction = Math.max(0f, Math.min(1f, mScrubFraction));
+        mLastX = x;
+        setTransitionFraction(mScrubFraction);
+    }
+
+    /**
+     * Animate from where the finger left the panes to the nearer state, or to the one it was
+     * flung toward.
+     *
+     * @param useVelocity false to ignore the velocity, e.g. when the gesture is cancelled.
+     */
+    private void settleScrub(boolean useVelocity) {
+        // Velocity in fractions per second, toward mScrubToState
+        float velocity = 0;
+        if (useVelocity && mVelocityTracker != null) {
+            mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+            final float pixelVelocity = mVelocityTracker.getXVelocity();
+            if (Math.abs(pixelVelocity) >= mMinFlingVelocity) {
+                velocity = pixelVelocity / mScrubDistance;
+            }
+        }
+        final boolean toTarget = (velocity != 0) ? (velocity > 0) : (mScrubFraction >= 0.5f);
+        final float remaining = toTarget ? (1f - mScrubFraction) : mScrubFraction;
+        int duration = (int) (ANIMATION_DURATION * remaining);
+        if (velocity != 0) {
+            duration = Math.min(duration, (int) (1000 * remaining / Math.abs(velocity)));
+        }
+        final int fromState = toTarget ? mScrubFromState : mScrubToState;
+        final int newState = toTarget ? mScrubToState : mScrubFromState;
+        startTransition(fromState, newState, duration, mScrubVisiblePanes, true);
+    }
+
     /**
      * @return The ID of the view for the left pane fragment.  (i.e. mailbox list)
      */
@@ -408,162 +942,262 @@ public class ThreePaneLayout extends LinearLayout {
         return R.id.right_pane;
     }
 
-    private void setViewWidth(View v, int value) {
-        v.getLayoutParams().width = value;
-        requestLayout();
+    /**
+     * Move the panes {@code fraction} of the way from where the current transition started to
+     * where it ends.
+     */
+    private void setTransitionFraction(float fraction) {
+        PaneLayoutEngine.interpolate(fraction, mStartLefts, mStartWidths, mEndLefts, mEndWidths,
+                mAnimLefts, mAnimWidths);
+        if (mTransforming) {
+            applyTransform();
+        } else {
+            applyLayout(mAnimLefts, mAnimWidths);
+        }
+    }
+
+    /** Get the positions of the panes, as they're shown now. */
+    private void getCurrentPositions(int[] outLefts, int[] outWidths) {
+        if (mTransforming) {
+            System.arraycopy(mAnimLefts, 0, outLefts, 0, PANE_COUNT);
+            System.arraycopy(mAnimWidths, 0, outWidths, 0, PANE_COUNT);
+            return;
+        }
+        System.arraycopy(mPaneLefts, 0, outLefts, 0, PANE_COUNT);
+        System.arraycopy(mPaneWidths, 0, outWidths, 0, PANE_COUNT);
+    }
+
+    /**
+     * Lay the panes out at {@code lefts} and {@code widths}.  If no width changes, the panes are
+     * just moved, without a layout pass.
+     */
+    private void applyLayout(int[] lefts, int[] widths) {
+        boolean resized = false;
+        for (int i = 0; i < PANE_COUNT; i++) {
+            resized |= (widths[i] != mPaneWidths[i]);
+        }
+        for (int i = 0; i < PANE_COUNT; i++) {
+            final int dx = lefts[i] - mPaneLefts[i];
+            mPaneLefts[i] = lefts[i];
+            mPaneWidths[i] = widths[i];
+            if (!resized && dx != 0) {
+                mPanes[i].offsetLeftAndRight(dx);
+            }
+        }
+        if (resized) {
+            requestLayout();
+        } else {
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        final int height = getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec);
+        setMeasuredDimension(width, height);
+
+        // Each pane is exactly as wide as its state says, and as tall as this layout.  Panes
+        // whose specs haven't changed and that haven't asked for a layout are left alone.
+        final int heightSpec = MeasureSpec.makeMeasureSpec(
+                Math.max(0, height - getPaddingTop() - getPaddingBottom()), MeasureSpec.EXACTLY);
+        for (int i = 0; i < PANE_COUNT; i++) {
+            final View pane = mPanes[i];
+            if (pane.getVisibility() == GONE) {
+                continue;
+            }
+            final int widthSpec = MeasureSpec.makeMeasureSpec(mPaneWidths[i], MeasureSpec.EXACTLY);
+            if (widthSpec == mPaneWidthSpecs[i] && heightSpec == mPaneHeightSpec
+                    && !pane.isLayoutRequested()) {
+                continue;
+            }
+            mPaneWidthSpecs[i] = widthSpec;
+            pane.measure(widthSpec, heightSpec);
+            if (mRecording) {
+                mRecord.mPaneMeasures++;
+            }
+        }
+        mPaneHeightSpec = heightSpec;
     }
 
-    private static final String PROP_MAILBOX_LIST_LEFT = "mailboxListLeftAnim";
-    private static final String PROP_MESSAGE_LIST_WIDTH = "messageListWidthAnim";
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final int top = getPaddingTop();
+        final int bottom = b - t - getPaddingBottom();
+        for (int i = 0; i < PANE_COUNT; i++) {
+            final View pane = mPanes[i];
+            if (pane.getVisibility() == GONE) {
+                continue;
+            }
+            final int left = getPaddingLeft() + mPaneLefts[i];
+            pane.layout(left, top, left + mPaneWidths[i], bottom);
+        }
+        if (mRecording) {
+            mRecord.mLayoutPasses++;
+        }
+    }
 
-    public void setMailboxListLeftAnim(int value) {
-        ((ViewGroup.MarginLayoutParams) mLeftPane.getLayoutParams()).leftMargin = value;
-        requestLayout();
+    @Override
+    public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new MarginLayoutParams(getContext(), attrs);
     }
 
-    public void setMessageListWidthAnim(int value) {
-        setViewWidth(mMiddlePane, value);
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new MarginLayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
     }
 
-    private int getCurrentMailboxLeft() {
-        return ((ViewGroup.MarginLayoutParams) mLeftPane.getLayoutParams()).leftMargin;
+    @Override
+    protected LayoutParams generateLayoutParams(LayoutParams p) {
+        return new MarginLayoutParams(p);
     }
 
-    private int getCurrentMessageListWidth() {
-        return mMiddlePane.getLayoutParams().width;
+    @Override
+    protected boolean checkLayoutParams(LayoutParams p) {
+        return p instanceof MarginLayoutParams;
     }
 
     /**
-     * Helper method to start animation.
+     * Start a transition in {@link #ANIMATION_MODE_TRANSFORM}: lay the panes out where they'll
+     * be at the end, except that each pane keeps the larger of its two widths (the next pane
+     * covers the extra part), and put them on hardware layers.
      */
-    private void startLayoutAnimation(int duration, AnimatorListener listener,
-            PropertyValuesHolder... values) {
-        if (mLastAnimator != null) {
-            mLastAnimator.cancel();
-        }
-        if (mLastAnimatorListener != null) {
-            // Animator.cancel() doesn't call listener.cancel() immediately, so sometimes
-            // we end up cancelling the previous one *after* starting the next one.
-            // Directly tell the listener it's cancelled to avoid that.
-            mLastAnimatorListener.cancel();
+    private void beginTransform() {
+        mTransforming = true;
+        int left = mEndLefts[0];
+        for (int i = 0; i < PANE_COUNT; i++) {
+            mLayoutLefts[i] = left;
+            mLayoutWidths[i] = Math.max(mStartWidths[i], mEndWidths[i]);
+            left += mLayoutWidths[i];
+            mPanes[i].setLayerType(LAYER_TYPE_HARDWARE, null);
         }
+        applyLayout(mLayoutLefts, mLayoutWidths);
 
-        final ObjectAnimator animator = ObjectAnimator.ofPropertyValuesHolder(
-                this, values).setDuration(duration);
-        animator.setInterpolator(INTERPOLATOR);
-        if (listener != null) {
-            animator.addListener(listener);
-        }
-        mLastAnimator = animator;
-        mLastAnimatorListener = listener;
-        animator.start();
+        System.arraycopy(mStartLefts, 0, mAnimLefts, 0, PANE_COUNT);
+        System.arraycopy(mStartWidths, 0, mAnimWidths, 0, PANE_COUNT);
+        applyTransform();
     }
 
     /**
-     * Get the state of the view. Returns ones of: STATE_UNINITIALIZED,
-     * STATE_LEFT_VISIBLE, STATE_MIDDLE_EXPANDED, STATE_RIGHT_VISIBLE
+     * Move the panes to show {@link #mAnimLefts} and {@link #mAnimWidths} without a layout pass.
      */
-    public int getPaneState() {
-        return mPaneState;
+    private void applyTransform() {
+        for (int i = 0; i < PANE_COUNT; i++) {
+            mPanes[i].setTranslationX(mAnimLefts[i] - mLayoutLefts[i]);
+        }
+        invalidate(); // The panes are clipped in drawChild()
     }
+
     /**
-     * Animation listener.
-     *
-     * Update the visibility of each pane before/after an animation.
+     * End a transition in {@link #ANIMATION_MODE_TRANSFORM}, laying the panes out where they're
+     * shown now.  No-op if not transforming.
      */
-    private class AnimatorListener implements Animator.AnimatorListener {
-        private final String mLogLabel;
-        private final View[] mViewsVisible;
-        private final View[] mViewsInvisible;
-        private final View[] mViewsGone;
-        private final int mPreviousVisiblePanes;
-
-        private boolean mCancelled;
-
-        public AnimatorListener(String logLabel, View[] viewsVisible, View[] viewsInvisible,
-                View[] viewsGone, int previousVisiblePanes) {
-            mLogLabel = logLabel;
-            mViewsVisible = viewsVisible;
-            mViewsInvisible = viewsInvisible;
-            mViewsGone = viewsGone;
-            mPreviousVisiblePanes = previousVisiblePanes;
+    private void endTransform() {
+        if (!mTransforming) {
+            return;
         }
-
-        public void cancel() {
-            mCancelled = true;
+        mTransforming = false;
+        for (View pane : mPanes) {
+            pane.setTranslationX(0);
+            pane.setLayerType(LAYER_TYPE_NONE, null);
         }
+        applyLayout(mAnimLefts, mAnimWidths);
+    }
 
-        /**
-         * Show the about-to-become-visible panes before an animation.
-         */
-        public void onAnimationStart(Animator animation) {
-            for (View v : mViewsVisible) {
-                v.setVisibility(View.VISIBLE);
-            }
+    private void startRecording(int fromState, int toState) {
+        mRecord.reset(fromState, toState);
+        mRecording = true;
+        mRecordStartNanos = mClock.nanoTime();
+        mHasLastFrame = false;
+        mClock.postFrameCallback(mFrameRecorder);
+    }
 
-            // TODO These things, making invisible views and calling the visible pane changed
-            // callback, should really be done in onAnimationEnd.
-            // However, because we may want to initiate a fragment transaction in the callback but
-            // by the time animation is done, the activity may be stopped (by user's HOME press),
-            // it's not easy to get right.  For now, we just do this before the animation.
-            for (View v : mViewsInvisible) {
-                v.setVisibility(View.INVISIBLE);
-            }
-            for (View v : mViewsGone) {
-                v.setVisibility(View.GONE);
-            }
-            mCallback.onVisiblePanesChanged(mPreviousVisiblePanes);
+    /**
+     * Stop recording the current transition, if any, and report it.
+     *
+     * @param interrupted whether it's stopped before the end of its animation.
+     */
+    private void finishRecording(boolean interrupted) {
+        if (!mRecording) {
+            return;
         }
-
-        public void onAnimationRepeat(Animator animation) {
+        mRecording = false;
+        mClock.removeFrameCallback(mFrameRecorder);
+        mRecord.mInterrupted = interrupted;
+        mRecord.mDurationMs = (mClock.nanoTime() - mRecordStartNanos) / 1000000;
+        mTransitionStats.addTransition(mRecord);
+        if (ANIMATION_DEBUG) {
+            Log.d(TAG, mRecord.toString());
         }
+        mTransitionListener.onTransitionFinished(mRecord);
+    }
 
-        public void onAnimationCancel(Animator animation) {
+    /**
+     * Draw only the part of each pane that can be seen: not off the edges of this layout, not
+     * under an opaque pane on its right, and, while transforming, not beyond the width being
+     * shown.  Panes with nothing to show aren't drawn at all.
+     */
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        int index = PANE_COUNT - 1;
+        while (index >= 0 && mPanes[index] != child) {
+            index--;
         }
-
-        /**
-         * Hide the about-to-become-hidden panes after an animation.
-         */
-        public void onAnimationEnd(Animator animation) {
-            if (mCancelled) {
-                return; // But they shouldn't be hidden when cancelled.
+        if (index < 0) {
+            return super.drawChild(canvas, child, drawingTime);
+        }
+        final int left = child.getLeft() + (int) child.getTranslationX();
+        final int fullRight = left + child.getWidth();
+        int right = fullRight;
+        if (mTransforming) {
+            right = Math.min(right, left + mAnimWidths[index]);
+        }
+        // The panes on the right are drawn later, on top of this one.
+        for (int i = index + 1; i < PANE_COUNT; i++) {
+            final View cover = mPanes[i];
+            if (cover.getVisibility() != View.VISIBLE || !(mPanesOpaque || cover.isOpaque())) {
+                continue;
+            }
+            final int coverLeft = cover.getLeft() + (int) cover.getTranslationX();
+            if (coverLeft + cover.getWidth() >= right) {
+                right = Math.min(right, coverLeft);
             }
         }
-    }
-
-    private static class SavedState extends BaseSavedState {
-        int mPaneState;
-
-        /**
-         * Constructor called from {@link ThreePaneLayout#onSaveInstanceState()}
-         */
-        SavedState(Parcelable superState) {
-            super(superState);
+        final int clipLeft = Math.max(left, 0);
+        final int clipRight = Math.min(right, getWidth());
+        if (clipRight <= clipLeft) {
+            return false; // Nothing to see
         }
-
-        /**
-         * Constructor called from {@link #CREATOR}
-         */
-        private SavedState(Parcel in) {
-            super(in);
-            mPaneState = in.readInt();
+        if (clipLeft == left && clipRight == fullRight) {
+            return super.drawChild(canvas, child, drawingTime);
         }
+        canvas.save();
+        canvas.clipRect(clipLeft, child.getTop(), clipRight, child.getBottom());
+        final boolean result = super.drawChild(canvas, child, drawingTime);
+        canvas.restore();
+        return result;
+    }
 
-        @Override
-        public void writeToParcel(Parcel out, int flags) {
-            super.writeToParcel(out, flags);
-            out.writeInt(mPaneState);
-        }
+    /** Stop the running transition where it is. */
+    private void cancelLastAnimation() {
+        mTransitionRunning = false;
+        mClock.removeFrameCallback(mTransitionRunner);
+    }
 
-        public static final Parcelable.Creator<SavedState> CREATOR
-                = new Parcelable.Creator<SavedState>() {
-            public SavedState createFromParcel(Parcel in) {
-                return new SavedState(in);
+    /** Set the visibility of the panes in {@code panes}, flags of {@link #getVisiblePanes}. */
+    private void setPaneVisibility(int panes, int visibility) {
+        for (int i = 0; i < PANE_COUNT; i++) {
+            if ((panes & mLayoutEngine.getPaneFlag(i)) != 0) {
+                mPanes[i].setVisibility(visibility);
             }
+        }
+    }
 
-            public SavedState[] newArray(int size) {
-                return new SavedState[size];
-            }
-        };
+    /**
+     * Get the state of the view. Returns ones of: STATE_UNINITIALIZED,
+     * STATE_LEFT_VISIBLE, STATE_MIDDLE_EXPANDED, STATE_RIGHT_VISIBLE
+     */
+    public int getPaneState() {
+        return mPaneState;
     }
 }
@@ -0,0 +1,22 @@
+package com.voyageonline.threepane;
+
+/**
+ * Time source and frame scheduler that drives {@link ThreePaneLayout} transitions.
+ *
+ * {@link ChoreographerTransitionClock} follows the display; {@link ManualTransitionClock} runs
+ * frames only when told to, in virtual time.  See {@link ThreePaneLayout#setClock}.
+ */
+public interface TransitionClock {
+    public interface FrameCallback {
+        /** Called on a frame, at {@code frameTimeNanos} on the {@link #nanoTime} time base. */
+        public void doFrame(long frameTimeNanos);
+    }
+
+    /** @return the current time in nanoseconds, from an arbitrary origin. */
+    public long nanoTime();
+
+    /** Call {@code callback} once, on the next frame.  No-op if it's already posted. */
+    public void postFrameCallback(FrameCallback callback);
+
+    public void removeFrameCallback(FrameCallback callback);
+}
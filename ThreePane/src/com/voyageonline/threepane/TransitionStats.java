@@ -0,0 +1,179 @@
+package com.voyageonline.threepane;
+
+import java.io.PrintWriter;
+
+/**
+ * Frame timing of {@link ThreePaneLayout} transitions, kept per (from state, to state) pair.
+ *
+ * Filled by {@link ThreePaneLayout}; see {@link ThreePaneLayout#getTransitionStats} and
+ * {@link ThreePaneLayout#dump}.  Must be used on the UI thread.
+ */
+public class TransitionStats {
+    /** Upper bounds of the histogram buckets, in milliseconds.  The last bucket is open. */
+    private static final int[] BUCKET_LIMITS_MS = {8, 16, 24, 33, 50, 100, 250};
+
+    /** Number of states, including {@link ThreePaneLayout#getPaneState} -1 (uninitialized). */
+    private static final int STATE_COUNT = 4;
+
+    /**
+     * What happened during one transition.  Passed to
+     * {@link ThreePaneLayout.TransitionListener#onTransitionFinished}, and reused afterwards.
+     */
+    public static class Record {
+        public int mFromState;
+        public int mToState;
+        public boolean mInterrupted;
+        public long mDurationMs;
+        public int mFrameCount;
+        public int mDroppedFrames;
+        public long mMaxFrameMs;
+        public int mLayoutPasses;
+        /** Number of times a pane was measured. */
+        public int mPaneMeasures;
+
+        void reset(int fromState, int toState) {
+            mFromState = fromState;
+            mToState = toState;
+            mInterrupted = false;
+            mDurationMs = 0;
+            mFrameCount = 0;
+            mDroppedFrames = 0;
+            mMaxFrameMs = 0;
+            mLayoutPasses = 0;
+            mPaneMeasures = 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Transition[" + mFromState + "->" + mToState
+                    + (mInterrupted ? " interrupted" : "") + " " + mDurationMs + "ms frames="
+                    + mFrameCount + " dropped=" + mDroppedFrames + " maxFrame=" + mMaxFrameMs
+                    + "ms layouts=" + mLayoutPasses + " measures=" + mPaneMeasures + "]";
+        }
+    }
+
+    /** Counts of values in {@link #BUCKET_LIMITS_MS} buckets. */
+    public static class Histogram {
+        private final int[] mCounts = new int[BUCKET_LIMITS_MS.length + 1];
+        private int mTotal;
+
+        public void add(long ms) {
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_MS.length && ms > BUCKET_LIMITS_MS[bucket]) {
+                bucket++;
+            }
+            mCounts[bucket]++;
+            mTotal++;
+        }
+
+        public int getTotal() {
+            return mTotal;
+        }
+
+        /** @return the count in bucket {@code index}; see {@link #getBucketLimitMs}. */
+        public int getCount(int index) {
+            return mCounts[index];
+        }
+
+        void dump(PrintWriter writer) {
+            for (int i = 0; i < mCounts.length; i++) {
+                if (mCounts[i] == 0) {
+                    continue;
+                }
+                writer.print(" ");
+                writer.print((i < BUCKET_LIMITS_MS.length) ? ("<=" + BUCKET_LIMITS_MS[i])
+                        : (">" + BUCKET_LIMITS_MS[i - 1]));
+                writer.print("ms:");
+                writer.print(mCounts[i]);
+            }
+            writer.println();
+        }
+    }
+
+    /** Stats of one (from, to) pair. */
+    private static class Entry {
+        int mTransitions;
+        int mInterrupted;
+        int mDroppedFrames;
+        int mLayoutPasses;
+        int mPaneMeasures;
+        final Histogram mFrames = new Histogram();
+        final Histogram mContentLatency = new Histogram();
+    }
+
+    private final Entry[][] mEntries = new Entry[STATE_COUNT][STATE_COUNT];
+
+    /** @return the upper bound of histogram bucket {@code index}, or -1 for the last one. */
+    public static int getBucketLimitMs(int index) {
+        return (index < BUCKET_LIMITS_MS.length) ? BUCKET_LIMITS_MS[index] : -1;
+    }
+
+    public static int getBucketCount() {
+        return BUCKET_LIMITS_MS.length + 1;
+    }
+
+    private Entry getEntry(int fromState, int toState) {
+        Entry entry = mEntries[fromState + 1][toState + 1];
+        if (entry == null) {
+            entry = new Entry();
+            mEntries[fromState + 1][toState + 1] = entry;
+        }
+        return entry;
+    }
+
+    void addFrame(int fromState, int toState, long frameMs) {
+        getEntry(fromState, toState).mFrames.add(frameMs);
+    }
+
+    void addTransition(Record record) {
+        final Entry entry = getEntry(record.mFromState, record.mToState);
+        entry.mTransitions++;
+        if (record.mInterrupted) {
+            entry.mInterrupted++;
+        }
+        entry.mDroppedFrames += record.mDroppedFrames;
+        entry.mLayoutPasses += record.mLayoutPasses;
+        entry.mPaneMeasures += record.mPaneMeasures;
+    }
+
+    void addContentLatency(int fromState, int toState, long latencyMs) {
+        getEntry(fromState, toState).mContentLatency.add(latencyMs);
+    }
+
+    /** @return frame durations of transitions from {@code fromState} to {@code toState}. */
+    public Histogram getFrameHistogram(int fromState, int toState) {
+        return getEntry(fromState, toState).mFrames;
+    }
+
+    /**
+     * @return times from {@link ThreePaneLayout#markContentRequested} to the first frame with
+     *     content in the right pane, for transitions from {@code fromState} to {@code toState}.
+     */
+    public Histogram getContentLatencyHistogram(int fromState, int toState) {
+        return getEntry(fromState, toState).mContentLatency;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        for (int from = 0; from < STATE_COUNT; from++) {
+            for (int to = 0; to < STATE_COUNT; to++) {
+                final Entry entry = mEntries[from][to];
+                if (entry == null) {
+                    continue;
+                }
+                writer.print(prefix);
+                writer.print((from - 1) + " -> " + (to - 1) + ": transitions="
+                        + entry.mTransitions + " interrupted=" + entry.mInterrupted
+                        + " dropped=" + entry.mDroppedFrames
+                        + " layouts=" + entry.mLayoutPasses
+                        + " measures=" + entry.mPaneMeasures);
+                writer.println();
+                writer.print(prefix);
+                writer.print("  frames:");
+                entry.mFrames.dump(writer);
+                writer.print(prefix);
+                writer.print("  content:");
+                entry.mContentLatency.dump(writer);
+            }
+        }
+    }
+}
@@ -16,20 +16,27 @@
 
 package com.voyageonline.threepane;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.io.IOException;
+import java.io.PrintWriter;
 
 import android.os.Bundle;
 import android.os.Message;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentTransaction;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
 
 /**
  * Base class for the UI controller.
  */
 abstract class UIControllerBase implements 
         ItemListFragment.Callbacks, SubItemListFragment.Callbacks  {
+    private static final String TAG = "UIControllerBase";
+
+    /** Bundle key of the {@link UiStateSnapshot} */
+    private static final String BUNDLE_KEY_UI_STATE = "UIControllerBase.uiState";
     
 	/** The owner activity */
     final ItemListActivity mActivity;
@@ -57,11 +64,31 @@ abstract class UIControllerBase implements
      * we put a fragment in this list when we {@link FragmentTransaction#remove(Fragment)} it,
      * and remove from the list when we actually uninstall it.
      */
-    private final List<Fragment> mRemovedFragments = new LinkedList<Fragment>();
+    private final RemovalList<Fragment> mRemovedFragments = new RemovalList<Fragment>();
+
+    /** Runs fragment transactions.  See {@link #commitFragmentTransaction} */
+    protected final FragmentTransactionScheduler mTransactionScheduler;
+
+    /** Items the user is likely to open next.  See {@link #onItemPreviewed} */
+    protected final DetailPrefetcher mDetailPrefetcher;
+
+    /** True once the activity's first frame is drawn.  See {@link #runAfterFirstFrame} */
+    private boolean mFirstFrameDrawn;
+
+    /** True once the activity is destroyed; deferred work is dropped. */
+    private boolean mDestroyed;
+
+    /**
+     * State restored by {@link #onRestoreInstanceState}.  The state of each list is handed to it
+     * when it's installed, then dropped.
+     */
+    private UiStateSnapshot mRestoredState;
 
     public UIControllerBase(ItemListActivity activity) {
         mActivity = activity;
         mFragmentManager = activity.getSupportFragmentManager();
+        mTransactionScheduler = new FragmentTransactionScheduler(mFragmentManager);
+        mDetailPrefetcher = new DetailPrefetcher(activity);
     }
 
     /** @return the layout ID for the activity. */
@@ -114,20 +141,100 @@ abstract class UIControllerBase implements
      * Handles the {@link android.app.Activity#onDestroy} callback.
      */
     public void onActivityDestroy() {
+        mDestroyed = true;
+        mTransactionScheduler.cancel();
+        mDetailPrefetcher.clear();
+    }
+
+    /**
+     * Handles the {@link android.app.Activity#dump} callback.
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("UIController " + getClass().getSimpleName());
     }
 
     /**
      * Handles the {@link android.app.Activity#onSaveInstanceState} callback.
      */
     public void onSaveInstanceState(Bundle outState) {
-
+        // Make sure the fragment manager saves the panes as the user last saw them.
+        mTransactionScheduler.flush();
+        mFragmentManager.executePendingTransactions();
+
+        final UiStateSnapshot state = new UiStateSnapshot();
+        saveState(state);
+        try {
+            outState.putByteArray(BUNDLE_KEY_UI_STATE, state.toByteArray(mActivity.getCacheDir()));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save the UI state", e);
+        }
     }
 
     /**
      * Handles the {@link android.app.Activity#onRestoreInstanceState} callback.
      */
     public void onRestoreInstanceState(Bundle savedInstanceState) {
-        
+        final byte[] blob = savedInstanceState.getByteArray(BUNDLE_KEY_UI_STATE);
+        if (blob == null) {
+            return;
+        }
+        final UiStateSnapshot state = UiStateSnapshot.fromByteArray(blob);
+        if (state == null) {
+            return;
+        }
+        mRestoredState = state;
+        restoreState(state);
+        // The rows go to the lists that aren't installed by then; the others load theirs.
+        state.readSpilledPayload(mActivity.getCacheDir(), new Runnable() {
+            public void run() {
+                restoreSpilledPayload(state);
+            }
+        });
+    }
+
+    /**
+     * Use the open item of a snapshot whose payload was spilled, once it's read.
+     */
+    private void restoreSpilledPayload(UiStateSnapshot state) {
+        if (state.mOpenItem != null) {
+            DetailCache.getInstance(mActivity).put(state.mOpenItem);
+        }
+    }
+
+    /**
+     * Fill in the state saved when the activity is.  Subclasses add their own.
+     */
+    protected void saveState(UiStateSnapshot state) {
+        if (mItemListFragment != null) {
+            state.mItemList = new UiStateSnapshot.ListState();
+            mItemListFragment.saveListState(state.mItemList);
+        }
+        if (mSubItemListFragment != null) {
+            state.mSubItemList = new UiStateSnapshot.ListState();
+            mSubItemListFragment.saveListState(state.mSubItemList);
+        }
+        if (mItemDetailFragment != null) {
+            state.mOpenItemId = mItemDetailFragment.getItemId();
+            state.mOpenItem = mItemDetailFragment.getItem();
+        }
+        if (mListContext != null) {
+            state.mParentId = mListContext.getParentId();
+            state.mParentTitle = mListContext.getTitle();
+        }
+    }
+
+    /**
+     * Restore the state saved by {@link #saveState}.  Called before the fragments are installed.
+     * The open item is put in the {@link DetailCache}, so that its fragment doesn't look it up.
+     */
+    protected void restoreState(UiStateSnapshot state) {
+        if (state.mOpenItem != null) {
+            DetailCache.getInstance(mActivity).put(state.mOpenItem);
+        }
+        if (state.mParentId != null) {
+            setListContext(MyContext.forParent(state.mParentId, state.mParentTitle));
+        }
     }
 
     /**
@@ -150,12 +257,20 @@ abstract class UIControllerBase implements
     protected void installItemListFragment(ItemListFragment fragment) {
         mItemListFragment = fragment;
         mItemListFragment.setCallback(this);
+        if (mRestoredState != null && mRestoredState.mItemList != null) {
+            fragment.restoreListState(mRestoredState.mItemList);
+            mRestoredState.mItemList = null;
+        }
     }
 
     /** Install fragment */
     protected void installSubItemListFragment(SubItemListFragment fragment) {
         mSubItemListFragment = fragment;
         mSubItemListFragment.setCallback(this);
+        if (mRestoredState != null && mRestoredState.mSubItemList != null) {
+            fragment.restoreListState(mRestoredState.mSubItemList);
+            mRestoredState.mSubItemList = null;
+        }
     }
 
     /** Install fragment */
@@ -181,37 +296,53 @@ abstract class UIControllerBase implements
     }
 
     protected void uninstallItemListFragment() {
+        if (shouldCancelLoads()) {
+            mItemListFragment.cancelLoading();
+        }
         mItemListFragment.setCallback(null);
         mItemListFragment = null;
     }
 
     protected void uninstallSubItemListFragment() {
+        if (shouldCancelLoads()) {
+            mSubItemListFragment.cancelLoading();
+        }
         mSubItemListFragment.setCallback(null);
         mSubItemListFragment = null;
     }
 
     protected void uninstallItemDetailFragment() {
+        if (shouldCancelLoads()) {
+            mItemDetailFragment.cancelLoading();
+        }
         mItemDetailFragment = null;
     }
 
+    /**
+     * @return true if an uninstalled fragment's loads should be cancelled.  They're kept across
+     *     configuration changes, so that the new fragment gets the data without reloading it.
+     */
+    private boolean shouldCancelLoads() {
+        return !mActivity.isChangingConfigurations();
+    }
+
     /**
      * If a {@link Fragment} is not already in {@link #mRemovedFragments},
      * {@link FragmentTransaction#remove} it and add to the list.
      *
      * Do nothing if {@code fragment} is null.
      */
-    protected final void removeFragment(FragmentTransaction ft, Fragment fragment) {
+    protected final void removeFragment(PendingTransaction ft, Fragment fragment) {
         if (fragment == null) {
             return;
         }
-        if (!mRemovedFragments.contains(fragment)) {
-            // Remove try/catch when b/4981556 is fixed (framework bug)
-            try {
-                ft.remove(fragment);
-            } catch (IllegalStateException ex) {
-                
-            }
-            addFragmentToRemovalList(fragment);
+        if (mTransactionScheduler.isPendingAdd(fragment)) {
+            // Cancels the add; it will never be installed, so don't wait for it to uninstall.
+            ft.remove(fragment);
+            return;
+        }
+        if (mRemovedFragments.add(fragment)) {
+            ft.remove(fragment);
         }
     }
 
@@ -233,26 +364,29 @@ abstract class UIControllerBase implements
     }
 
     /**
-     * Remove the fragment if it's installed.
+     * Remove the fragment if it's installed or waiting to be added.
      */
-    protected FragmentTransaction removeMailboxListFragment(FragmentTransaction ft) {
+    protected PendingTransaction removeMailboxListFragment(PendingTransaction ft) {
         removeFragment(ft, mItemListFragment);
+        removeFragment(ft, mTransactionScheduler.getPendingAdd(ItemListFragment.class));
         return ft;
     }
 
     /**
-     * Remove the fragment if it's installed.
+     * Remove the fragment if it's installed or waiting to be added.
      */
-    protected FragmentTransaction removeSubItemListFragment(FragmentTransaction ft) {
+    protected PendingTransaction removeSubItemListFragment(PendingTransaction ft) {
         removeFragment(ft, mSubItemListFragment);
+        removeFragment(ft, mTransactionScheduler.getPendingAdd(SubItemListFragment.class));
         return ft;
     }
 
     /**
-     * Remove the fragment if it's installed.
+     * Remove the fragment if it's installed or waiting to be added.
      */
-    protected FragmentTransaction removeItemDetailFragment(FragmentTransaction ft) {
+    protected PendingTransaction removeItemDetailFragment(PendingTransaction ft) {
         removeFragment(ft, mItemDetailFragment);
+        removeFragment(ft, mTransactionScheduler.getPendingAdd(ItemDetailFragment.class));
         return ft;
     }
 
@@ -283,21 +417,107 @@ abstract class UIControllerBase implements
     }
 
     /**
-     * Commit a {@link FragmentTransaction}.
+     * Start loading an item the user is likely to open next, so that
+     * {@link #newItemDetailFragment} has it ready.
+     */
+    public void onItemPreviewed(String id) {
+        mDetailPrefetcher.prefetch(id);
+    }
+
+    /**
+     * @return a new {@link ItemDetailFragment} for the item, showing it right away if it's been
+     *     prefetched.
+     */
+    protected final ItemDetailFragment newItemDetailFragment(String itemId) {
+        return ItemDetailFragment.newInstance(itemId, mDetailPrefetcher.get(itemId));
+    }
+
+    /**
+     * Show an item in the installed {@link ItemDetailFragment}, without a fragment transaction.
+     *
+     * @return true if it's shown; false if there's no installed fragment or it's being removed,
+     *     in which case the caller needs a new one.
      */
-    protected void commitFragmentTransaction(FragmentTransaction ft) {
+    protected final boolean rebindItemDetailFragment(String itemId) {
+        if (mItemDetailFragment == null
+                || mRemovedFragments.contains(mItemDetailFragment)
+                || mTransactionScheduler.getPendingAdd(ItemDetailFragment.class) != null) {
+            return false;
+        }
+        mItemDetailFragment.bind(itemId, mDetailPrefetcher.get(itemId));
+        return true;
+    }
+
+    /** @return a new transaction, to be passed to {@link #commitFragmentTransaction}. */
+    protected final PendingTransaction beginTransaction() {
+        return new PendingTransaction();
+    }
+
+    /**
+     * Commit a {@link PendingTransaction}.  It's run with the others committed in the same
+     * frame, unless the scheduler is synchronous.  See {@link FragmentTransactionScheduler}
+     */
+    protected void commitFragmentTransaction(PendingTransaction ft) {
         if (!ft.isEmpty()) {
-            // NB: there should be no cases in which a transaction is committed after
-            // onSaveInstanceState. Unfortunately, the "state loss" check also happens when in
-            // LoaderCallbacks.onLoadFinished, and we wish to perform transactions there. The check
-            // by the framework is conservative and prevents cases where there are transactions
-            // affecting Loader lifecycles - but we have no such cases.
-            // TODO: use asynchronous callbacks from loaders to avoid this implicit dependency
-            ft.commitAllowingStateLoss();
-            mFragmentManager.executePendingTransactions();
+            mTransactionScheduler.schedule(ft);
         }
     }
 
+    /**
+     * Commit a {@link PendingTransaction} along with any scheduled ones, without waiting for a
+     * frame.  When called from {@link ItemListActivity#onCreate}, the fragments are created
+     * before the first frame.
+     */
+    protected void commitFragmentTransactionNow(PendingTransaction ft) {
+        commitFragmentTransaction(ft);
+        mTransactionScheduler.flush();
+    }
+
+    /**
+     * Run {@code runnable} on the UI thread once the activity's first frame has been drawn,
+     * or now if it already has.  Used to keep work that isn't needed for the first frame off
+     * the startup path.  Dropped if the activity is destroyed first.
+     */
+    protected final void runAfterFirstFrame(final Runnable runnable) {
+        if (mFirstFrameDrawn) {
+            runnable.run();
+            return;
+        }
+        final View decor = mActivity.getWindow().getDecorView();
+        decor.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            public boolean onPreDraw() {
+                decor.getViewTreeObserver().removeOnPreDrawListener(this);
+                if (!mFirstFrameDrawn) {
+                    mFirstFrameDrawn = true;
+                    StartupTimer.markFirstFrame();
+                }
+                // Posted, so that it runs once this frame has been drawn.
+                decor.post(new Runnable() {
+                    public void run() {
+                        if (!mDestroyed) {
+                            runnable.run();
+                        }
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+
+    /**
+     * Show the children of the item selected in the item list.
+     */
+    public void onParentSelected(String id, String title) {
+        open(MyContext.forParent(id, title), 0);
+    }
+
+    /**
+     * Called as the user types a search, with the text so far; null or empty when the search is
+     * closed.
+     */
+    public void onSearchQueryChanged(String query) {
+    }
 
     /**
      * Performs the back action.
@@ -330,7 +550,7 @@ abstract class UIControllerBase implements
     
     /**
      * Opens a given list
-     * @param listContext the list context for the message list to open
+     * @param listContext the parent whose children to list, or null to list only the roots
      * @param messageId if specified and not {@link Message#NO_MESSAGE}, will open the message
      *     in the message list.
      */
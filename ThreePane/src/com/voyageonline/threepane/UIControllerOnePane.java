@@ -49,6 +49,13 @@ class UIControllerOnePane extends UIControllerBase {
     // Our custom poor-man's back stack which has only one entry at maximum.
     private Fragment mPreviousFragment;
 
+    /**
+     * The fragment shown by the last {@link #showFragment} or {@link #popFromBackStack}, until
+     * it's installed.  Transactions run on the next frame, so until then it's the fragment that
+     * the next one replaces, not the installed one.
+     */
+    private Fragment mPendingFragment;
+
     public UIControllerOnePane(ItemListActivity activity) {
         super(activity);
     }
@@ -93,12 +100,38 @@ class UIControllerOnePane extends UIControllerBase {
         return false;
     }
 
+    @Override
+    protected void installItemListFragment(ItemListFragment fragment) {
+        super.installItemListFragment(fragment);
+        onFragmentInstalled(fragment);
+    }
+
+    @Override
+    protected void installSubItemListFragment(SubItemListFragment fragment) {
+        super.installSubItemListFragment(fragment);
+        onFragmentInstalled(fragment);
+    }
+
+    @Override
+    protected void installItemDetailFragment(ItemDetailFragment fragment) {
+        super.installItemDetailFragment(fragment);
+        onFragmentInstalled(fragment);
+    }
+
+    private void onFragmentInstalled(Fragment fragment) {
+        if (fragment == mPendingFragment) {
+            mPendingFragment = null;
+        }
+    }
+
     /**
      * @return currently installed {@link Fragment} (1-pane has only one at most), or null if none
-     *         exists.
+     *         exists.  A fragment that's been shown but isn't installed yet counts as installed.
      */
     private Fragment getInstalledFragment() {
-        if (isItemListInstalled()) {
+        if (mPendingFragment != null) {
+            return mPendingFragment;
+        } else if (isItemListInstalled()) {
             return getItemListFragment();
         } else if (isSubItemListInstalled()) {
             return getSubItemListFragment();
@@ -113,11 +146,9 @@ class UIControllerOnePane extends UIControllerBase {
      * {@link FragmentTransaction#remove} it) and {@link FragmentTransaction#add} {@code fragment}.
      *
      * @param fragment {@link Fragment} to be added.
-     *
-     *  TODO Delay-call the whole method and use the synchronous transaction.
      */
     private void showFragment(Fragment fragment) {
-        final FragmentTransaction ft = mFragmentManager.beginTransaction();
+        final PendingTransaction ft = beginTransaction();
         final Fragment installed = getInstalledFragment();
         if ((installed instanceof ItemDetailFragment)
                 && (fragment instanceof ItemDetailFragment)) {
@@ -144,6 +175,7 @@ class UIControllerOnePane extends UIControllerBase {
         
         ft.replace(R.id.fragment_placeholder, fragment);
         ft.setTransition(FragmentTransaction.TRANSIT_FRAGMENT_OPEN);
+        mPendingFragment = fragment;
         commitFragmentTransaction(ft);
     }
 
@@ -176,14 +208,12 @@ class UIControllerOnePane extends UIControllerBase {
 
     /**
      * Pop from our custom back stack.
-     *
-     * TODO Delay-call the whole method and use the synchronous transaction.
      */
     private void popFromBackStack() {
         if (mPreviousFragment == null) {
             return;
         }
-        final FragmentTransaction ft = mFragmentManager.beginTransaction();
+        final PendingTransaction ft = beginTransaction();
         final Fragment installed = getInstalledFragment();
         removeFragment(ft, installed);
 
@@ -198,21 +228,34 @@ class UIControllerOnePane extends UIControllerBase {
 
         ft.attach(mPreviousFragment);
         ft.setTransition(FragmentTransaction.TRANSIT_FRAGMENT_CLOSE);
+        mPendingFragment = mPreviousFragment;
         mPreviousFragment = null;
         commitFragmentTransaction(ft);
         return;
     }
 
     @Override protected void navigateToMessage(long messageId) {
+        final String itemId = Long.toString(messageId);
+        // An installed detail fragment may be on its way out, replaced by a pending list.
+        if (!(getInstalledFragment() instanceof ItemDetailFragment)
+                || !rebindItemDetailFragment(itemId)) {
+            showFragment(newItemDetailFragment(itemId));
+        }
     }
 
 	public void onItemSelected(String id) {
-		// TODO Auto-generated method stub		
+		showFragment(newItemDetailFragment(id));
 	}
 
 	@Override
 	protected void openInternal(MyContext listContext, long messageId) {
-		// TODO Auto-generated method stub
-		
+		if (listContext != null) {
+			showFragment(SubItemListFragment.newInstance(listContext));
+		} else if (!isItemListInstalled()) {
+			showFragment(new ItemListFragment());
+		}
+		if (messageId != 0) {
+			navigateToMessage(messageId);
+		}
 	}
 }
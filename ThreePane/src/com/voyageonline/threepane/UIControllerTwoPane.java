@@ -16,9 +16,10 @@
 
 package com.voyageonline.threepane;
 
-import android.os.Bundle;
+import java.io.PrintWriter;
+
 import android.os.Message;
-import android.support.v4.app.FragmentTransaction;
+import android.text.TextUtils;
 
 /**
  * UI Controller for x-large devices.  Supports a multi-pane layout.
@@ -31,6 +32,9 @@ class UIControllerTwoPane extends UIControllerBase implements ThreePaneLayout.Ca
     // Other UI elements
     protected ThreePaneLayout mThreePane;
 
+    /** The search being shown, or null. */
+    private String mSearchQuery;
+
     public UIControllerTwoPane(ItemListActivity activity) {
         super(activity);
     }
@@ -63,24 +67,41 @@ class UIControllerTwoPane extends UIControllerBase implements ThreePaneLayout.Ca
         // Set up content
         mThreePane = (ThreePaneLayout) mActivity.findViewById(R.id.three_pane);
         mThreePane.setCallback(this);
+        // The fragments draw on the panes' opaque background, see three_pane.xml.  The visible
+        // panes always cover the whole window, so the window background would only be drawn
+        // over.
+        mThreePane.setPanesOpaque(true);
+        mActivity.getWindow().setBackgroundDrawable(null);
 
     }
 
     /** {@inheritDoc} */
     @Override
-    public void onSaveInstanceState(Bundle outState) {
-        super.onSaveInstanceState(outState);
+    public void dump(String prefix, PrintWriter writer) {
+        super.dump(prefix, writer);
+        mThreePane.dump(prefix + "  ", writer);
     }
 
     /** {@inheritDoc} */
     @Override
-    public void onRestoreInstanceState(Bundle savedInstanceState) {
-        super.onRestoreInstanceState(savedInstanceState);
+    protected void saveState(UiStateSnapshot state) {
+        super.saveState(state);
+        state.mPaneState = mThreePane.getPaneState();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void restoreState(UiStateSnapshot state) {
+        super.restoreState(state);
+        mThreePane.restorePaneState(state.mPaneState);
     }
 
     @Override
     protected void installSubItemListFragment(SubItemListFragment fragment) {
         super.installSubItemListFragment(fragment);
+        if (mSearchQuery != null) {
+            fragment.setSearchQuery(mSearchQuery);
+        }
 
         if (isItemListInstalled()) {
             //getItemListFragment().setHighlightedMailbox(fragment.getMailboxId());
@@ -97,19 +118,32 @@ class UIControllerTwoPane extends UIControllerBase implements ThreePaneLayout.Ca
         }
     }
 
+    /**
+     * Only the item list is created before the first frame; it shows the cached first page
+     * until its repository is loaded.  The middle and right panes are set up once the first
+     * frame has been drawn.
+     */
     @Override
     public void openInternal(final MyContext listContext, final long messageId) {
-        final FragmentTransaction ft = mFragmentManager.beginTransaction();
+        final PendingTransaction ft = beginTransaction();
         updateItemList(ft, true);
-        updateSubItemList(ft, true);
+        commitFragmentTransactionNow(ft);
+        mThreePane.showLeftPane();
 
-        if (messageId != 0) {
-            updateMessageView(ft, messageId);
-            mThreePane.showRightPane();
-        } else {
-            mThreePane.showLeftPane();
-        }
-        commitFragmentTransaction(ft);
+        runAfterFirstFrame(new Runnable() {
+            public void run() {
+                final PendingTransaction deferred = beginTransaction();
+                updateSubItemList(deferred, true);
+                if (messageId != 0) {
+                    updateMessageView(deferred, Long.toString(messageId));
+                }
+                commitFragmentTransaction(deferred);
+                if (messageId != 0) {
+                    mThreePane.showRightPane();
+                }
+                StartupTimer.markPanesReady();
+            }
+        });
     }
 
     /**
@@ -117,10 +151,14 @@ class UIControllerTwoPane extends UIControllerBase implements ThreePaneLayout.Ca
      * specified account is already selected, no actions will be performed unless
      * <code>forceReload</code> is <code>true</code>.
      *
-     * @param ft {@link FragmentTransaction} to use.
+     * @param ft {@link PendingTransaction} to use.
      * @param clearDependentPane if true, the message list and the message view will be cleared
      */
-    private void updateItemList(FragmentTransaction ft, boolean clearDependentPane) {
+    private void updateItemList(PendingTransaction ft, boolean clearDependentPane) {
+        if (isItemListInstalled()
+                || mTransactionScheduler.getPendingAdd(ItemListFragment.class) != null) {
+            return; // It always lists the roots.
+        }
         if (clearDependentPane) {
             removeSubItemListFragment(ft);
             removeItemDetailFragment(ft);
@@ -140,56 +178,72 @@ class UIControllerTwoPane extends UIControllerBase implements ThreePaneLayout.Ca
     }
 
     /**
-     * Show the message list fragment for the given mailbox.
+     * Show the children of the parent in {@link #mListContext}, unless they're already shown.
      *
-     * @param ft {@link FragmentTransaction} to use.
+     * @param ft {@link PendingTransaction} to use.
      */
-    private void updateSubItemList(FragmentTransaction ft, boolean clearDependentPane) {
-        //if (mListContext.getMailboxId() != getMessageListMailboxId()) {
-        //    removeMessageListFragment(ft);
-        //    ft.add(mThreePane.getMiddlePaneId(), MessageListFragment.newInstance(mListContext));
-        //}
+    private void updateSubItemList(PendingTransaction ft, boolean clearDependentPane) {
+        if (mListContext != null
+                && !mListContext.getParentId().equals(getSubItemListParentId())) {
+            removeSubItemListFragment(ft);
+            ft.add(mThreePane.getMiddlePaneId(), SubItemListFragment.newInstance(mListContext));
+        }
         if (clearDependentPane) {
             removeItemDetailFragment(ft);
         }
     }
 
     /**
-     * Shortcut to call {@link #updateSubItemList(FragmentTransaction, boolean)} and
+     * @return the parent ID of the sub-item list about to be added, or of the one installed,
+     *     or null.
+     */
+    private String getSubItemListParentId() {
+        final SubItemListFragment pending = (SubItemListFragment)
+                mTransactionScheduler.getPendingAdd(SubItemListFragment.class);
+        if (pending != null) {
+            return pending.getParentId();
+        }
+        return isSubItemListInstalled() ? getSubItemListFragment().getParentId() : null;
+    }
+
+    /**
+     * Shortcut to call {@link #updateSubItemList(PendingTransaction, boolean)} and
      * commit.
      */
     private void updateMessageList(boolean clearDependentPane) {
-        FragmentTransaction ft = mFragmentManager.beginTransaction();
+        PendingTransaction ft = beginTransaction();
         updateSubItemList(ft, clearDependentPane);
         commitFragmentTransaction(ft);
     }
 
     /**
-     * Show a message on the message view.
+     * Show an item on the detail view.
      *
-     * @param ft {@link FragmentTransaction} to use.
-     * @param messageId ID of the mailbox to load. Must never be {@link Message#NO_MESSAGE}.
+     * @param ft {@link PendingTransaction} to use.
+     * @param itemId ID of the item to load. Must never be null.
      */
-    private void updateMessageView(FragmentTransaction ft, long messageId) {
-        if (messageId == 0) {
+    private void updateMessageView(PendingTransaction ft, String itemId) {
+        if (itemId == null) {
             throw new IllegalArgumentException();
         }
 
-        //if (messageId == getMessageId()) {
-        //    return; // nothing to do.
-        //}
+        // Before the rebind, which may show cached content right away.
+        mThreePane.markContentRequested();
+        if (rebindItemDetailFragment(itemId)) {
+            return; // Shown in the current fragment; nothing to add to the transaction.
+        }
 
         removeItemDetailFragment(ft);
 
-        ft.add(mThreePane.getRightPaneId(), new ItemDetailFragment());
+        ft.add(mThreePane.getRightPaneId(), newItemDetailFragment(itemId));
     }
 
     /**
-     * Shortcut to call {@link #updateMessageView(FragmentTransaction, long)} and commit.
+     * Shortcut to call {@link #updateMessageView(PendingTransaction, String)} and commit.
      */
     @Override protected void navigateToMessage(long messageId) {
-        FragmentTransaction ft = mFragmentManager.beginTransaction();
-        updateMessageView(ft, messageId);
+        PendingTransaction ft = beginTransaction();
+        updateMessageView(ft, Long.toString(messageId));
         commitFragmentTransaction(ft);
     }
 
@@ -197,13 +251,49 @@ class UIControllerTwoPane extends UIControllerBase implements ThreePaneLayout.Ca
      * Remove the message view if shown.
      */
     private void unselectMessage() {
-        commitFragmentTransaction(removeItemDetailFragment(mFragmentManager.beginTransaction()));
+        commitFragmentTransaction(removeItemDetailFragment(beginTransaction()));
         if (isSubItemListInstalled()) {
             //getSubItemListFragment().setSelectedMessage(Message.NO_MESSAGE);
         }
     }
 
 
+    /**
+     * Show the results in the middle pane, in the layout's search mode, which hides the item
+     * list.  Closing the search removes them and goes back to the item list.
+     */
+    @Override
+    public void onSearchQueryChanged(String query) {
+        if (TextUtils.isEmpty(query)) {
+            query = null;
+        }
+        if (TextUtils.equals(query, mSearchQuery)) {
+            return;
+        }
+        mSearchQuery = query;
+        if (query == null) {
+            mThreePane.setIsSearch(false);
+            final PendingTransaction ft = removeItemDetailFragment(beginTransaction());
+            if (isSubItemListInstalled() && getSubItemListFragment().getParentId() != null) {
+                getSubItemListFragment().setSearchQuery(null); // Back to the children
+            } else {
+                removeSubItemListFragment(ft);
+            }
+            commitFragmentTransaction(ft);
+            mThreePane.showLeftPane();
+            return;
+        }
+        mThreePane.setIsSearch(true);
+        if (isSubItemListInstalled()) {
+            getSubItemListFragment().setSearchQuery(query);
+        } else if (mTransactionScheduler.getPendingAdd(SubItemListFragment.class) == null) {
+            // Gets the query when it's installed.
+            final PendingTransaction ft = beginTransaction();
+            ft.add(mThreePane.getMiddlePaneId(), new SubItemListFragment());
+            commitFragmentTransaction(ft);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean onBackPressed(boolean isSystemBackKey) {
@@ -216,7 +306,9 @@ class UIControllerTwoPane extends UIControllerBase implements ThreePaneLayout.Ca
     }
 
 	public void onItemSelected(String id) {
-		// TODO Auto-generated method stub
-		
+		final PendingTransaction ft = beginTransaction();
+		updateMessageView(ft, id);
+		commitFragmentTransaction(ft);
+		mThreePane.showRightPane();
 	}
 }
@@ -0,0 +1,392 @@
+package com.voyageonline.threepane;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * The state of the whole UI, saved as one versioned binary blob by
+ * {@link UIControllerBase#onSaveInstanceState}: the pane state, the selection and scroll
+ * position of each list, the parent whose children are listed, and the open item.
+ *
+ * The blob also carries the rows in view in each list and the open item's content, so that
+ * after the process is killed the UI can be shown as it was without querying the catalog.
+ * When they don't fit in {@link #INLINE_LIMIT} bytes, they're written to a file in the spill
+ * directory instead, and the blob only holds the file's token.  The last spill file is kept;
+ * older ones are deleted when a new one is written.  Spill files are written and read on a
+ * worker thread of their own, in order, so that a payload is read back after it's written.
+ *
+ * Blob layout; integers are unsigned varints, strings are a varint length and UTF-8 bytes:
+ * <pre>
+ *   byte    VERSION
+ *   byte    pane state
+ *   string? open item ID
+ *   string? parent ID, string? parent title
+ *   list?   item list:      activated, first position, first top, item count, rows start
+ *   list?   sub-item list:  same
+ *   byte    PAYLOAD_NONE | PAYLOAD_INLINE + bytes | PAYLOAD_SPILLED + token
+ * </pre>
+ * "?" fields are preceded by a presence byte.  Positions are stored plus one so that
+ * {@code INVALID_POSITION} fits.  The payload holds the rows of each list present, then the
+ * open item's content, if the item is open, after a byte telling whether it was loaded.
+ *
+ * A blob of another version is ignored, and the UI starts from its defaults.
+ */
+class UiStateSnapshot {
+    static final int VERSION = 2;
+
+    /**
+     * Largest payload kept in the blob itself: enough for the rows in view of both lists and an
+     * item of common length, while keeping the saved state small.
+     */
+    static final int INLINE_LIMIT = 16 * 1024;
+
+    private static final int PAYLOAD_NONE = 0;
+    private static final int PAYLOAD_INLINE = 1;
+    private static final int PAYLOAD_SPILLED = 2;
+
+    private static final String TAG = "UiStateSnapshot";
+
+    private static final String SPILL_PREFIX = "ui_state_";
+
+    /** Writes and reads the spill files, one at a time. */
+    private static final ExecutorService sSpillExecutor = Executors.newSingleThreadExecutor();
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    /** See {@link ThreePaneLayout#getPaneState} */
+    int mPaneState = -1;
+
+    /** ID of the item in the detail pane, or null. */
+    String mOpenItemId;
+
+    /** The item in the detail pane, if it's loaded.  Only kept along with {@link #mOpenItemId} */
+    DummyItem mOpenItem;
+
+    /** See {@link MyContext} */
+    String mParentId;
+    String mParentTitle;
+
+    ListState mItemList;
+    ListState mSubItemList;
+
+    /** Token of the file holding the payload, if it's spilled.  See {@link #readSpilledPayload} */
+    String mSpillToken;
+
+    /**
+     * Selection and scroll position of a list, and the rows in view.
+     */
+    static class ListState {
+        int mActivatedPosition = -1;
+
+        /** List position of the first row in view, and its offset from the top of the list. */
+        int mFirstPosition;
+        int mFirstTop;
+
+        /** Number of items in the list. */
+        int mItemCount;
+
+        /** Item position of the first of {@link #mRows} */
+        int mRowsStart;
+
+        /** Items in view, in order. */
+        DummyItem[] mRows = new DummyItem[0];
+    }
+
+    /**
+     * @param spillDir where to write the payload if it's too large to be inlined.  It's written
+     *     in the background.
+     */
+    public byte[] toByteArray(File spillDir) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeByte(mPaneState);
+        out.writeBoolean(mOpenItemId != null);
+        if (mOpenItemId != null) {
+            writeString(out, mOpenItemId);
+        }
+        writeOptionalString(out, mParentId);
+        writeOptionalString(out, mParentTitle);
+        writeListState(out, mItemList);
+        writeListState(out, mSubItemList);
+
+        final byte[] payload = encodePayload();
+        if (payload.length == 0) {
+            out.writeByte(PAYLOAD_NONE);
+        } else if (payload.length <= INLINE_LIMIT) {
+            out.writeByte(PAYLOAD_INLINE);
+            writeVarInt(out, payload.length);
+            out.write(payload);
+        } else {
+            final String token = UUID.randomUUID().toString();
+            spillInBackground(spillDir, token, payload);
+            out.writeByte(PAYLOAD_SPILLED);
+            writeString(out, token);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the snapshot in {@code blob}, or null if it's of another version or can't be read.
+     *     A spilled payload isn't read; see {@link #readSpilledPayload}.
+     */
+    public static UiStateSnapshot fromByteArray(byte[] blob) {
+        try {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(blob));
+            if (in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            final UiStateSnapshot snapshot = new UiStateSnapshot();
+            snapshot.mPaneState = in.readByte();
+            if (in.readBoolean()) {
+                snapshot.mOpenItemId = readString(in);
+            }
+            snapshot.mParentId = readOptionalString(in);
+            snapshot.mParentTitle = readOptionalString(in);
+            snapshot.mItemList = readListState(in);
+            snapshot.mSubItemList = readListState(in);
+
+            final int payloadType = in.readUnsignedByte();
+            if (payloadType == PAYLOAD_INLINE) {
+                final byte[] payload = new byte[readVarInt(in)];
+                in.readFully(payload);
+                snapshot.decodePayload(new ByteArrayInputStream(payload));
+            } else if (payloadType == PAYLOAD_SPILLED) {
+                snapshot.mSpillToken = readString(in);
+            }
+            return snapshot;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the spilled payload, if any, in the background, then fill in the rows of the lists
+     * and the open item's content on the UI thread and run {@code callback}.  If the payload is
+     * missing, they're left out and {@code callback} isn't run.
+     */
+    public void readSpilledPayload(final File spillDir, final Runnable callback) {
+        if (mSpillToken == null) {
+            return;
+        }
+        // Decoded into a copy, so that this snapshot is only touched on the UI thread.
+        final UiStateSnapshot payload = new UiStateSnapshot();
+        payload.mItemList = (mItemList != null) ? new ListState() : null;
+        payload.mSubItemList = (mSubItemList != null) ? new ListState() : null;
+        payload.mOpenItemId = mOpenItemId;
+        final File file = new File(spillDir, SPILL_PREFIX + mSpillToken);
+        sSpillExecutor.execute(new Runnable() {
+            public void run() {
+                if (!payload.readPayloadFile(file)) {
+                    return;
+                }
+                sHandler.post(new Runnable() {
+                    public void run() {
+                        if (mItemList != null) {
+                            mItemList.mRows = payload.mItemList.mRows;
+                        }
+                        if (mSubItemList != null) {
+                            mSubItemList.mRows = payload.mSubItemList.mRows;
+                        }
+                        mOpenItem = payload.mOpenItem;
+                        callback.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /** @return false if the file is missing or can't be read. */
+    private boolean readPayloadFile(File file) {
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                decodePayload(in);
+            } finally {
+                in.close();
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private byte[] encodePayload() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        writeRows(out, mItemList);
+        writeRows(out, mSubItemList);
+        if (mOpenItemId != null) {
+            out.writeBoolean(mOpenItem != null);
+            if (mOpenItem != null) {
+                writeString(out, mOpenItem.content);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read the payload into the lists and the open item.  If it's truncated, what was read is
+     * kept.
+     */
+    private void decodePayload(InputStream stream) {
+        final DataInputStream in = new DataInputStream(stream);
+        try {
+            readRows(in, mItemList);
+            readRows(in, mSubItemList);
+            if (mOpenItemId != null && in.readBoolean()) {
+                mOpenItem = new DummyItem(mOpenItemId, readString(in));
+            }
+        } catch (IOException e) {
+            // Keep the positions; the rows will be loaded.
+        }
+    }
+
+    private static void spillInBackground(final File dir, final String token,
+            final byte[] payload) {
+        sSpillExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    spill(dir, token, payload);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to write the UI state", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Write the payload to its own file, and delete the files written before.
+     */
+    private static void spill(File dir, String token, byte[] payload) throws IOException {
+        final File file = new File(dir, SPILL_PREFIX + token);
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            out.write(payload);
+        } finally {
+            out.close();
+        }
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File old : files) {
+                if (old.getName().startsWith(SPILL_PREFIX) && !old.equals(file)) {
+                    old.delete();
+                }
+            }
+        }
+    }
+
+    private static void writeListState(DataOutputStream out, ListState state)
+            throws IOException {
+        out.writeBoolean(state != null);
+        if (state == null) {
+            return;
+        }
+        writeVarInt(out, state.mActivatedPosition + 1);
+        writeVarInt(out, state.mFirstPosition + 1);
+        writeVarInt(out, Math.max(0, -state.mFirstTop)); // The first row is never below the top
+        writeVarInt(out, state.mItemCount);
+        writeVarInt(out, state.mRowsStart);
+    }
+
+    private static ListState readListState(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        final ListState state = new ListState();
+        state.mActivatedPosition = readVarInt(in) - 1;
+        state.mFirstPosition = readVarInt(in) - 1;
+        state.mFirstTop = -readVarInt(in);
+        state.mItemCount = readVarInt(in);
+        state.mRowsStart = readVarInt(in);
+        return state;
+    }
+
+    private static void writeRows(DataOutputStream out, ListState state) throws IOException {
+        if (state == null) {
+            return;
+        }
+        writeVarInt(out, state.mRows.length);
+        for (DummyItem item : state.mRows) {
+            writeString(out, item.id);
+            writeString(out, item.content);
+        }
+    }
+
+    private static void readRows(DataInputStream in, ListState state) throws IOException {
+        if (state == null) {
+            return;
+        }
+        final DummyItem[] rows = new DummyItem[readVarInt(in)];
+        for (int i = 0; i < rows.length; i++) {
+            final String id = readString(in);
+            rows[i] = new DummyItem(id, readString(in));
+        }
+        state.mRows = rows;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes("UTF-8");
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeOptionalString(DataOutputStream out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readOptionalString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+}
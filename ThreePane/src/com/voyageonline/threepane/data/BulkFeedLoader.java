@@ -0,0 +1,225 @@
+package com.voyageonline.threepane.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Loads a whole feed into an empty {@link ItemDatabase} at once, for the first import of a
+ * catalog; {@link CatalogImporter} streams feeds into the database otherwise.
+ *
+ * The file is cut at line ends into {@link #RANGES_PER_THREAD} byte ranges per thread, which
+ * are parsed in parallel, each sorting its records by ID.  The sorted ranges are then merged,
+ * to find the IDs that come more than once: as with {@link ItemDatabase#upsert}, such an item
+ * keeps its first position and takes its last content.  Finally the records are written in
+ * feed order by {@link ItemDatabase#bulkLoad}, which builds each index in one pass once the
+ * rows are in, rather than updating them row by row.
+ *
+ * All the records are in memory at once, so only feeds up to {@link #getMaxFileSize}, which
+ * depends on the heap the app is given, are loaded this way.  Parsed records take about four
+ * times the size of their lines on a desktop JVM, more with the items built from them and on
+ * Dalvik; {@link #HEAP_PER_FILE_BYTE} leaves room for that.
+ */
+public class BulkFeedLoader {
+    /** Largest feed loaded at once, however large the heap. */
+    public static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+    /** Bytes of heap needed per byte of feed, with some margin. */
+    private static final int HEAP_PER_FILE_BYTE = 8;
+
+    /** Number of byte ranges per thread, so that threads that finish early can take more. */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /** The records of a byte range: in feed order, and by ID. */
+    static class Range {
+        FeedRecord[] mRecords;
+        FeedRecord[] mById;
+    }
+
+    private static final Comparator<FeedRecord> BY_ID = new Comparator<FeedRecord>() {
+        public int compare(FeedRecord a, FeedRecord b) {
+            return a.mId.compareTo(b.mId);
+        }
+    };
+
+    /**
+     * @param memoryClass the app's heap limit in megabytes, as given by
+     *     {@link android.app.ActivityManager#getMemoryClass}.
+     * @return the largest feed that can be loaded at once, using up to half the heap.
+     */
+    public static long getMaxFileSize(int memoryClass) {
+        return Math.min(MAX_FILE_SIZE, memoryClass * 1024L * 1024 / 2 / HEAP_PER_FILE_BYTE);
+    }
+
+    /**
+     * Write the items of {@code file} to {@code database}, which must be empty, parsing it on
+     * {@code threads} threads.  Don't call it on the UI thread.
+     *
+     * @return the number of items written.
+     */
+    public static int load(File file, ItemDatabase database, int threads) throws IOException {
+        final Range[] ranges = parse(file, threads);
+        int count = 0;
+        for (Range range : ranges) {
+            for (FeedRecord record : range.mRecords) {
+                if (!record.mDuplicate) {
+                    count++;
+                }
+            }
+        }
+        final DummyItem[] items = new DummyItem[count];
+        final String[] parentIds = new String[count];
+        int i = 0;
+        for (Range range : ranges) {
+            for (FeedRecord record : range.mRecords) {
+                if (!record.mDuplicate) {
+                    items[i] = record.toItem();
+                    parentIds[i] = record.mLatest.mParentId;
+                    i++;
+                }
+            }
+        }
+        database.bulkLoad(items, parentIds, count);
+        return count;
+    }
+
+    /**
+     * Parse the ranges of {@code file} in parallel, then merge them by ID and mark the
+     * duplicates.
+     */
+    static Range[] parse(final File file, int threads) throws IOException {
+        final long[] bounds = split(file, threads * RANGES_PER_THREAD);
+        final Range[] ranges = new Range[bounds.length - 1];
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Range>> futures = new ArrayList<Future<Range>>();
+            for (int i = 0; i < ranges.length; i++) {
+                final long start = bounds[i];
+                final long end = bounds[i + 1];
+                futures.add(executor.submit(new Callable<Range>() {
+                    public Range call() throws IOException {
+                        return parseRange(file, start, end);
+                    }
+                }));
+            }
+            for (int i = 0; i < ranges.length; i++) {
+                ranges[i] = futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        markDuplicates(ranges);
+        return ranges;
+    }
+
+    /**
+     * @return the offsets of {@code parts} ranges of {@code file}, each starting at a line, and
+     *     the file's length.  Some ranges may be empty.
+     */
+    private static long[] split(File file, int parts) throws IOException {
+        final long length = file.length();
+        final long[] bounds = new long[parts + 1];
+        bounds[parts] = length;
+        final byte[] buffer = new byte[8 * 1024];
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            for (int i = 1; i < parts; i++) {
+                final long target = Math.max(bounds[i - 1], length * i / parts);
+                if (target == 0) {
+                    continue;
+                }
+                // Start after the first newline at or after the byte before the target.
+                long position = target - 1;
+                in.seek(position);
+                bounds[i] = length;
+                int n;
+                search:
+                while ((n = in.read(buffer)) > 0) {
+                    for (int j = 0; j < n; j++) {
+                        if (buffer[j] == '\n') {
+                            bounds[i] = position + j + 1;
+                            break search;
+                        }
+                    }
+                    position += n;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return bounds;
+    }
+
+    private static Range parseRange(File file, long start, long end) throws IOException {
+        final List<FeedRecord> records = new ArrayList<FeedRecord>();
+        final FeedReader reader = new FeedReader(file, start, end);
+        try {
+            FeedRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        } finally {
+            reader.close();
+        }
+        final Range range = new Range();
+        range.mRecords = records.toArray(new FeedRecord[records.size()]);
+        range.mById = range.mRecords.clone();
+        Arrays.sort(range.mById, BY_ID); // Stable, so records with the same ID stay in order.
+        return range;
+    }
+
+    /**
+     * Merge the ranges by ID, earlier ranges first for the same ID, and mark each record whose
+     * ID came before as a duplicate of the first.
+     */
+    private static void markDuplicates(final Range[] ranges) {
+        final int[] next = new int[ranges.length];
+        final PriorityQueue<Integer> heads = new PriorityQueue<Integer>(
+                Math.max(1, ranges.length), new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                final int order = BY_ID.compare(
+                        ranges[a].mById[next[a]], ranges[b].mById[next[b]]);
+                return (order != 0) ? order : a - b;
+            }
+        });
+        for (int i = 0; i < ranges.length; i++) {
+            if (ranges[i].mById.length > 0) {
+                heads.add(i);
+            }
+        }
+        FeedRecord first = null;
+        while (!heads.isEmpty()) {
+            final int i = heads.poll();
+            final FeedRecord record = ranges[i].mById[next[i]++];
+            if (first != null && first.mId.equals(record.mId)) {
+                record.mDuplicate = true;
+                first.mLatest = record;
+            } else {
+                first = record;
+            }
+            if (next[i] < ranges[i].mById.length) {
+                heads.add(i);
+            }
+        }
+    }
+}
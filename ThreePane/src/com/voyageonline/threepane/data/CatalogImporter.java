@@ -0,0 +1,368 @@
+package com.voyageonline.threepane.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Imports the catalog feeds dropped in the app's {@link #FEED_DIR} into the
+ * {@link ItemDatabase}, which then becomes the default catalog.
+ *
+ * A feed is a JSON-lines file, one item per line:
+ * <pre>
+ *   {"id": "42", "content": "Item 42", "parent": "7"}
+ * </pre>
+ * "parent" is optional.  An item whose ID is already in the database is updated in place.
+ * Lines that can't be parsed, or that are longer than {@link FeedReader#MAX_LINE_LENGTH}, are
+ * skipped.
+ *
+ * The first feed imported into an empty database, if it's small enough for
+ * {@link BulkFeedLoader#getMaxFileSize}, is loaded in one go by {@link BulkFeedLoader}, on all
+ * the cores.  Other feeds are streamed: a parser thread reads the file a line at a time into
+ * batches of {@link #BATCH_SIZE} items and hands them to the writer thread through a queue of
+ * {@link #QUEUE_CAPACITY} batches; when the database falls behind, the queue fills up and the
+ * parser waits, so memory use is bounded whatever the size of the file.  Each batch is written
+ * in one transaction, after which the byte offset of the next line is saved as a checkpoint
+ * and the lists are told with {@link ItemRepository#notifyCatalogChanged}, so the items show
+ * up as they're imported.  If the process dies, the import starts again from the last
+ * checkpoint; a batch written but not checkpointed is written again, which changes nothing.
+ * Imported feeds are deleted.
+ *
+ * A feed that fails {@link #MAX_ATTEMPTS} times in a row without a batch being written, be it
+ * from a bad file, a full disk or running out of memory, is renamed with
+ * {@link #FAILED_EXTENSION} and left alone; attempts are counted before they start, so that
+ * also covers a feed that kills the process.
+ */
+public class CatalogImporter {
+    private static final String TAG = "CatalogImporter";
+
+    /** Directory of the app's files directory where feeds are dropped. */
+    public static final String FEED_DIR = "feeds";
+
+    /** Extension of feed files. */
+    public static final String FEED_EXTENSION = ".jsonl";
+
+    /** Extension given to feeds that couldn't be imported. */
+    public static final String FAILED_EXTENSION = ".failed";
+
+    /** Number of attempts at a feed without progress before it's given up on. */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** Number of items written per transaction. */
+    public static final int BATCH_SIZE = 500;
+
+    /** Number of parsed batches that may wait for the writer. */
+    private static final int QUEUE_CAPACITY = 4;
+
+    private static final String PREFS_NAME = "catalog_import";
+    private static final String KEY_OFFSET = ".offset";
+    private static final String KEY_LENGTH = ".length";
+    private static final String KEY_ATTEMPTS = ".attempts";
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(2,
+            new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, TAG);
+                }
+            });
+
+    /** Set while feeds are being imported.  UI thread only. */
+    private static boolean sRunning;
+
+    private final Context mContext;
+    private final ItemDatabase mDatabase;
+    private final SharedPreferences mPrefs;
+
+    /** Largest feed given to {@link BulkFeedLoader}. */
+    private final long mMaxBulkFileSize;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Set while a {@link ItemRepository#notifyCatalogChanged} is posted but hasn't run. */
+    private final AtomicBoolean mNotifyPending = new AtomicBoolean();
+
+    /**
+     * IDs updated in place since the lists were last told, or null if everything may have
+     * changed.  Guarded by {@code this}.
+     */
+    private ArrayList<String> mUpdatedIds = new ArrayList<String>();
+
+    /**
+     * Items parsed from a run of lines, up to the byte offset after the last of them.
+     */
+    private static class Batch {
+        final DummyItem[] mItems = new DummyItem[BATCH_SIZE];
+        final String[] mParentIds = new String[BATCH_SIZE];
+        int mCount;
+        long mEndOffset;
+
+        /** Set on the last batch of a feed, with the error that ended it, if any. */
+        boolean mLast;
+        Throwable mError;
+    }
+
+    private CatalogImporter(Context context) {
+        mContext = context.getApplicationContext();
+        mDatabase = ItemDatabase.getInstance(mContext);
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        final ActivityManager am =
+                (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        mMaxBulkFileSize = BulkFeedLoader.getMaxFileSize(am.getMemoryClass());
+    }
+
+    /**
+     * Import the feeds in {@link #FEED_DIR} in the background, in the order of their names,
+     * unless an import is already running.  Must be called on the UI thread.
+     */
+    public static void importFeeds(Context context) {
+        if (sRunning) {
+            return;
+        }
+        final File dir = new File(context.getFilesDir(), FEED_DIR);
+        final CatalogImporter importer = new CatalogImporter(context);
+        sRunning = true;
+        sExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    final File[] files = dir.listFiles();
+                    if (files != null) {
+                        Arrays.sort(files);
+                        for (File file : files) {
+                            if (file.getName().endsWith(FEED_EXTENSION)) {
+                                importer.tryImportFeed(file);
+                            }
+                        }
+                    }
+                } finally {
+                    importer.mHandler.post(new Runnable() {
+                        public void run() {
+                            sRunning = false;
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * {@link #importFeed}, unless it's failed too often, in which case it's renamed.  Failures
+     * are logged rather than thrown, so that they don't take the process down.
+     */
+    private void tryImportFeed(File file) {
+        final String key = file.getName();
+        final int attempts = mPrefs.getInt(key + KEY_ATTEMPTS, 0);
+        if (attempts >= MAX_ATTEMPTS) {
+            Log.e(TAG, "Giving up on " + file + " after " + attempts + " attempts");
+            file.renameTo(new File(file.getPath() + FAILED_EXTENSION));
+            clearCheckpoint(key);
+            return;
+        }
+        mPrefs.edit().putInt(key + KEY_ATTEMPTS, attempts + 1).commit();
+        try {
+            importFeed(file);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to import " + file, e);
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Out of memory importing " + file, e);
+        }
+    }
+
+    /**
+     * Write the items of {@code file} to the database, from its checkpoint on, and delete it
+     * if it was read to the end.  Runs on the writer thread; the file is parsed on the other.
+     */
+    private void importFeed(final File file) {
+        final long startMillis = SystemClock.uptimeMillis();
+        final String key = file.getName();
+        long offset = 0;
+        if (mPrefs.getLong(key + KEY_LENGTH, -1) == file.length()) {
+            offset = mPrefs.getLong(key + KEY_OFFSET, 0);
+        }
+        if (offset > 0) {
+            Log.i(TAG, "Resuming " + file + " at byte " + offset);
+        } else if (file.length() <= mMaxBulkFileSize
+                && !ItemDatabase.isReady(mContext) && mDatabase.isEmpty()) {
+            bulkLoadFeed(file);
+            return;
+        }
+
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(QUEUE_CAPACITY);
+        final long startOffset = offset;
+        final Future<?> parser = sExecutor.submit(new Runnable() {
+            public void run() {
+                parse(file, startOffset, queue);
+            }
+        });
+
+        int imported = 0;
+        boolean parsed = false;
+        try {
+            while (!parsed) {
+                final Batch batch;
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (batch.mCount > 0) {
+                    final ArrayList<String> updatedIds = new ArrayList<String>();
+                    mDatabase.upsert(batch.mItems, batch.mParentIds, batch.mCount, updatedIds);
+                    imported += batch.mCount;
+                    mPrefs.edit()
+                            .putLong(key + KEY_OFFSET, batch.mEndOffset)
+                            .putLong(key + KEY_LENGTH, file.length())
+                            .remove(key + KEY_ATTEMPTS)
+                            .commit();
+                    postCatalogChanged(updatedIds);
+                }
+                parsed = batch.mLast;
+                if (parsed && batch.mError != null) {
+                    Log.w(TAG, "Failed to read " + file + "; will resume at byte "
+                            + batch.mEndOffset, batch.mError);
+                    return;
+                }
+            }
+        } finally {
+            if (!parsed) {
+                // The writer failed: stop the parser, which may be waiting for room.
+                parser.cancel(true);
+                queue.clear();
+            }
+        }
+        file.delete();
+        clearCheckpoint(key);
+        Log.i(TAG, "Imported " + imported + " items from " + file + " in "
+                + (SystemClock.uptimeMillis() - startMillis) + " ms");
+    }
+
+    private void clearCheckpoint(String key) {
+        mPrefs.edit()
+                .remove(key + KEY_OFFSET)
+                .remove(key + KEY_LENGTH)
+                .remove(key + KEY_ATTEMPTS)
+                .commit();
+    }
+
+    /**
+     * Load {@code file} into the empty database with {@link BulkFeedLoader}, and delete it.  If
+     * the process dies, nothing was written, and the feed is loaded again from the start.
+     */
+    private void bulkLoadFeed(File file) {
+        final long startMillis = SystemClock.uptimeMillis();
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final int imported;
+        try {
+            imported = BulkFeedLoader.load(file, mDatabase, threads);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load " + file, e);
+            return;
+        }
+        postCatalogChanged(null);
+        file.delete();
+        clearCheckpoint(file.getName());
+        Log.i(TAG, "Loaded " + imported + " items from " + file + " on " + threads
+                + " threads in " + (SystemClock.uptimeMillis() - startMillis) + " ms");
+    }
+
+    /**
+     * Tell the lists about the batches written, with those written since they were last told.
+     *
+     * @param updatedIds the IDs updated in place, or null if everything may have changed.
+     */
+    private void postCatalogChanged(ArrayList<String> updatedIds) {
+        synchronized (this) {
+            if (updatedIds == null) {
+                mUpdatedIds = null;
+            } else if (mUpdatedIds != null) {
+                mUpdatedIds.addAll(updatedIds);
+            }
+        }
+        if (mNotifyPending.compareAndSet(false, true)) {
+            mHandler.post(new Runnable() {
+                public void run() {
+                    mNotifyPending.set(false);
+                    final ArrayList<String> ids;
+                    synchronized (CatalogImporter.this) {
+                        ids = mUpdatedIds;
+                        mUpdatedIds = new ArrayList<String>();
+                    }
+                    ItemRepository.notifyCatalogChanged(ids);
+                }
+            });
+        }
+    }
+
+    /**
+     * Read {@code file} from byte {@code offset} on into batches, and put them on
+     * {@code queue}, waiting while it's full.  The last batch is put with {@link Batch#mLast}
+     * set, and with the error that stopped the parser, if any; unless the parser is
+     * interrupted, which means the writer has gone.  Runs on the parser thread.
+     */
+    private static void parse(File file, long offset, BlockingQueue<Batch> queue) {
+        Batch batch = new Batch();
+        batch.mEndOffset = offset;
+        int skipped = 0;
+        try {
+            final FeedReader reader = new FeedReader(file, offset, Long.MAX_VALUE);
+            try {
+                FeedRecord record;
+                while ((record = reader.next()) != null) {
+                    batch.mItems[batch.mCount] = record.toItem();
+                    batch.mParentIds[batch.mCount] = record.mParentId;
+                    batch.mCount++;
+                    batch.mEndOffset = reader.getOffset();
+                    if (batch.mCount == BATCH_SIZE) {
+                        queue.put(batch);
+                        batch = new Batch();
+                        batch.mEndOffset = reader.getOffset();
+                    }
+                }
+                batch.mEndOffset = reader.getOffset();
+            } finally {
+                skipped = reader.getSkipped();
+                reader.close();
+            }
+        } catch (IOException e) {
+            batch.mError = e;
+        } catch (RuntimeException e) {
+            batch.mError = e;
+        } catch (OutOfMemoryError e) {
+            batch.mError = e;
+        } catch (InterruptedException e) {
+            return;
+        }
+        if (skipped > 0) {
+            Log.w(TAG, "Skipped " + skipped + " lines of " + file);
+        }
+        batch.mLast = true;
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            // The writer has gone.
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.voyageonline.threepane.data;
+
+import android.content.Context;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * The children of one item of the default catalog, or its roots, as an {@link ItemSource} of
+ * their own.
+ *
+ * Reads through {@link ItemRepository#getDefaultHierarchy} each time, so that it follows the
+ * catalog when it changes.  Children at consecutive positions in the catalog are read from it
+ * in one call.  Once the default catalog is an {@link ItemDatabase}, e.g. after an import
+ * started, the children are read from it with {@link SqliteItemSource#forChildren} instead.
+ */
+public class ChildItemSource implements ItemSource {
+    private final Context mContext;
+    private final String mParentId;
+
+    private int[] mPositions = new int[0];
+    private DummyItem[] mRun = new DummyItem[0];
+
+    /** The database source that {@link #mDatabaseChildren} was made from. */
+    private SqliteItemSource mDatabaseSource;
+    private SqliteItemSource mDatabaseChildren;
+
+    /**
+     * @param parentId ID of the parent, or null for the roots.
+     */
+    public ChildItemSource(Context context, String parentId) {
+        mContext = context.getApplicationContext();
+        mParentId = parentId;
+    }
+
+    /** @return the position of the parent, {@link ItemHierarchy#ROOT}, or -2 if it's gone. */
+    private int getParentPosition(ItemSource source) {
+        if (mParentId == null) {
+            return ItemHierarchy.ROOT;
+        }
+        final int position = source.indexOf(mParentId);
+        return (position < 0) ? -2 : position;
+    }
+
+    /**
+     * @return the children in {@code source} if it's a database, or null.
+     */
+    private synchronized ItemSource getDatabaseChildren(ItemSource source) {
+        if (!(source instanceof SqliteItemSource)) {
+            return null;
+        }
+        if (source != mDatabaseSource) {
+            mDatabaseSource = (SqliteItemSource) source;
+            mDatabaseChildren = mDatabaseSource.forChildren(mParentId);
+        }
+        return mDatabaseChildren;
+    }
+
+    public int getCount() {
+        final ItemSource children = getDatabaseChildren(
+                ItemRepository.getDefaultSource(mContext));
+        if (children != null) {
+            return children.getCount();
+        }
+        final ItemHierarchy hierarchy = ItemRepository.getDefaultHierarchy(mContext);
+        final int parent = getParentPosition(ItemRepository.getDefaultSource(mContext));
+        return (hierarchy == null || parent < ItemHierarchy.ROOT) ? 0
+                : hierarchy.getChildCount(parent);
+    }
+
+    public synchronized int load(int start, int count, DummyItem[] dest) {
+        final ItemSource source = ItemRepository.getDefaultSource(mContext);
+        final ItemSource children = getDatabaseChildren(source);
+        if (children != null) {
+            return children.load(start, count, dest);
+        }
+        final ItemHierarchy hierarchy = ItemRepository.getDefaultHierarchy(mContext);
+        final int parent = getParentPosition(source);
+        if (hierarchy == null || parent < ItemHierarchy.ROOT) {
+            return 0;
+        }
+        final int loaded = Math.max(0, Math.min(count, hierarchy.getChildCount(parent) - start));
+        if (mPositions.length < loaded) {
+            mPositions = new int[loaded];
+            mRun = new DummyItem[loaded];
+        }
+        hierarchy.getChildren(parent, start, loaded, mPositions);
+        int runStart = 0;
+        while (runStart < loaded) {
+            int runEnd = runStart + 1;
+            while (runEnd < loaded && mPositions[runEnd] == mPositions[runEnd - 1] + 1) {
+                runEnd++;
+            }
+            final int n = source.load(mPositions[runStart], runEnd - runStart, mRun);
+            System.arraycopy(mRun, 0, dest, runStart, n);
+            runStart = runEnd;
+        }
+        return loaded;
+    }
+
+    public int indexOf(String id) {
+        final ItemSource source = ItemRepository.getDefaultSource(mContext);
+        final ItemSource children = getDatabaseChildren(source);
+        if (children != null) {
+            return children.indexOf(id);
+        }
+        final ItemHierarchy hierarchy = ItemRepository.getDefaultHierarchy(mContext);
+        final int parent = getParentPosition(source);
+        final int position = source.indexOf(id);
+        if (hierarchy == null || parent < ItemHierarchy.ROOT || position < 0) {
+            return -1;
+        }
+        return hierarchy.indexOfChild(parent, position);
+    }
+}
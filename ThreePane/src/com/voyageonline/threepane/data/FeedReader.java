@@ -0,0 +1,98 @@
+package com.voyageonline.threepane.data;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the {@link FeedRecord}s of a feed a line at a time, from one byte offset up to
+ * another, keeping only the current line in memory.  Lines longer than {@link #MAX_LINE_LENGTH}
+ * and lines that aren't records are skipped, and counted.
+ */
+class FeedReader implements Closeable {
+    /** Longest line read, in bytes. */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final FileInputStream mStream;
+    private final InputStream mIn;
+    private final long mEnd;
+    private long mOffset;
+
+    private byte[] mLine = new byte[1024];
+    private int mLength;
+    private boolean mOverlong;
+    private int mSkipped;
+
+    /**
+     * @param start offset of the first line to read.
+     * @param end offset to stop at, which should be the start of a line or past the end.
+     */
+    FeedReader(File file, long start, long end) throws IOException {
+        mStream = new FileInputStream(file);
+        mStream.getChannel().position(start);
+        mIn = new BufferedInputStream(mStream, 16 * 1024);
+        mOffset = start;
+        mEnd = end;
+    }
+
+    /** @return the next record, or null at the end. */
+    FeedRecord next() throws IOException {
+        while (mOffset < mEnd) {
+            final int b = mIn.read();
+            if (b < 0) {
+                break;
+            }
+            mOffset++;
+            if (b != '\n') {
+                if (mLength < MAX_LINE_LENGTH) {
+                    if (mLength == mLine.length) {
+                        mLine = Arrays.copyOf(mLine, Math.min(MAX_LINE_LENGTH, mLength * 2));
+                    }
+                    mLine[mLength++] = (byte) b;
+                } else {
+                    mOverlong = true;
+                }
+                continue;
+            }
+            final FeedRecord record = endLine();
+            if (record != null) {
+                return record;
+            }
+        }
+        // The last line may not end with a newline.
+        return endLine();
+    }
+
+    /** @return the offset of the line after the last one read. */
+    long getOffset() {
+        return mOffset;
+    }
+
+    /** @return the number of lines skipped so far. */
+    int getSkipped() {
+        return mSkipped;
+    }
+
+    public void close() throws IOException {
+        mStream.close();
+    }
+
+    private FeedRecord endLine() {
+        FeedRecord record = null;
+        if (mOverlong) {
+            mSkipped++;
+        } else if (!FeedRecord.isBlank(mLine, 0, mLength)) {
+            record = FeedRecord.parse(mLine, 0, mLength);
+            if (record == null) {
+                mSkipped++;
+            }
+        }
+        mLength = 0;
+        mOverlong = false;
+        return record;
+    }
+}
@@ -0,0 +1,221 @@
+package com.voyageonline.threepane.data;
+
+import java.io.UnsupportedEncodingException;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * One line of a catalog feed: a JSON object with the item's "id", its "content", and its
+ * "parent", if any.  See {@link CatalogImporter}.
+ *
+ * Lines are read with a small parser of their own rather than {@code org.json}, which builds a
+ * map of every field; other fields, including nested objects and arrays, are skipped.  Plain
+ * Java, so that {@link BulkFeedLoader} can be timed on a desktop JVM.
+ */
+class FeedRecord {
+    final String mId;
+    final String mContent;
+    final String mParentId;
+
+    /**
+     * Set on a record whose ID came before in the feed, which {@link BulkFeedLoader} drops: as
+     * with {@link ItemDatabase#upsert}, the item keeps its first position and takes the last
+     * content and parent, those of {@link #mLatest}.
+     */
+    boolean mDuplicate;
+    FeedRecord mLatest = this;
+
+    FeedRecord(String id, String content, String parentId) {
+        mId = id;
+        mContent = content;
+        mParentId = parentId;
+    }
+
+    /** @return the item, with the content of {@link #mLatest} */
+    DummyItem toItem() {
+        return new DummyItem(mId, mLatest.mContent);
+    }
+
+    /**
+     * @return the record on the first {@code length} bytes of {@code line}, or null if they
+     *     aren't a JSON object with a string or number "id".
+     */
+    static FeedRecord parse(byte[] line, int offset, int length) {
+        try {
+            return new Parser(new String(line, offset, length, "UTF-8")).parseRecord();
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /** @return true if the line is empty but for whitespace. */
+    static boolean isBlank(byte[] line, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (line[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Parser {
+        private final String mText;
+        private int mPos;
+
+        /** Set by {@link #parseScalar} */
+        private String mValue;
+
+        Parser(String text) {
+            mText = text;
+        }
+
+        FeedRecord parseRecord() {
+            String id = null;
+            String content = "";
+            String parentId = null;
+            if (!consume('{')) {
+                return null;
+            }
+            if (!consume('}')) {
+                do {
+                    final String name = parseString();
+                    if (name == null || !consume(':')) {
+                        return null;
+                    }
+                    skipWhitespace();
+                    final boolean wanted = name.equals("id") || name.equals("content")
+                            || name.equals("parent");
+                    if (!(wanted ? parseScalar() : skipValue())) {
+                        return null;
+                    }
+                    final String value = mValue;
+                    if (name.equals("id")) {
+                        id = value;
+                    } else if (name.equals("content")) {
+                        content = (value != null) ? value : "";
+                    } else if (name.equals("parent")) {
+                        parentId = value;
+                    }
+                } while (consume(','));
+                if (!consume('}')) {
+                    return null;
+                }
+            }
+            skipWhitespace();
+            return (id != null && mPos == mText.length())
+                    ? new FeedRecord(id, content, parentId) : null;
+        }
+
+        /**
+         * Read a string, number, boolean or null into {@link #mValue}: a string as is, a number
+         * or boolean as written, and null as null.
+         *
+         * @return false if the value isn't one of those.
+         */
+        private boolean parseScalar() {
+            if (mPos < mText.length() && mText.charAt(mPos) == '"') {
+                mValue = parseString();
+                return mValue != null;
+            }
+            final int start = mPos;
+            while (mPos < mText.length()
+                    && "-+.0123456789eEtruefalsn".indexOf(mText.charAt(mPos)) >= 0) {
+                mPos++;
+            }
+            final String token = mText.substring(start, mPos);
+            mValue = token.equals("null") ? null : token;
+            return token.length() > 0;
+        }
+
+        /** Skip a value of any type, nested or not.  @return false if it's malformed. */
+        private boolean skipValue() {
+            mValue = null;
+            int depth = 0;
+            while (mPos < mText.length()) {
+                final char c = mText.charAt(mPos);
+                if (c == '"') {
+                    if (parseString() == null) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (depth == 0 && (c == ',' || c == '}')) {
+                    return true;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                mPos++;
+            }
+            return false;
+        }
+
+        /** @return the string at the current position, unescaped, or null if there's none. */
+        private String parseString() {
+            if (!consume('"')) {
+                return null;
+            }
+            StringBuilder builder = null;
+            int start = mPos;
+            while (mPos < mText.length()) {
+                final char c = mText.charAt(mPos);
+                if (c == '"') {
+                    final String tail = mText.substring(start, mPos++);
+                    return (builder == null) ? tail : builder.append(tail).toString();
+                }
+                if (c != '\\') {
+                    mPos++;
+                    continue;
+                }
+                if (builder == null) {
+                    builder = new StringBuilder();
+                }
+                builder.append(mText, start, mPos);
+                if (mPos + 1 >= mText.length()) {
+                    return null;
+                }
+                final char escape = mText.charAt(mPos + 1);
+                mPos += 2;
+                switch (escape) {
+                    case 'b': builder.append('\b'); break;
+                    case 'f': builder.append('\f'); break;
+                    case 'n': builder.append('\n'); break;
+                    case 'r': builder.append('\r'); break;
+                    case 't': builder.append('\t'); break;
+                    case 'u':
+                        if (mPos + 4 > mText.length()) {
+                            return null;
+                        }
+                        try {
+                            builder.append((char) Integer.parseInt(
+                                    mText.substring(mPos, mPos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            return null;
+                        }
+                        mPos += 4;
+                        break;
+                    default: builder.append(escape); break;
+                }
+                start = mPos;
+            }
+            return null;
+        }
+
+        private boolean consume(char c) {
+            skipWhitespace();
+            if (mPos < mText.length() && mText.charAt(mPos) == c) {
+                mPos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (mPos < mText.length() && mText.charAt(mPos) <= ' ') {
+                mPos++;
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.voyageonline.threepane.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.util.Log;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * The first rows of the catalog, kept in a small file so that the item list can be shown
+ * before its {@link ItemRepository} is opened.  The file is read on a worker thread, which
+ * usually takes less than the first frame.
+ *
+ * File layout:
+ * <pre>
+ *   int     MAGIC
+ *   int     itemCount
+ *   UTF     ID and content of each item
+ * </pre>
+ *
+ * The file is rewritten whenever the first page is loaded, so it's at most one launch stale.
+ */
+public class FirstPageCache {
+    private static final String TAG = "FirstPageCache";
+
+    /** Name of the cache file in the app's files directory. */
+    public static final String FILE_NAME = "first_page.bin";
+
+    private static final int MAGIC = 0x54504631; // "TPF1"
+
+    /** Number of items kept; enough to fill the list on a large screen. */
+    public static final int MAX_ITEMS = 30;
+
+    private static final DummyItem[] EMPTY = new DummyItem[0];
+
+    /** The items last read or written, so that only the first launch reads the file. */
+    private static DummyItem[] sItems;
+
+    /** Gets the cached items.  See {@link #read} */
+    public interface Callback {
+        /** Called on the UI thread with the cached items, or an empty array if there's none. */
+        public void onFirstPageRead(DummyItem[] items);
+    }
+
+    private FirstPageCache() {
+    }
+
+    /**
+     * Hand the cached items to {@code callback}: right away if they've already been read by
+     * this process, otherwise once the file is read in the background.  Must be called on the
+     * UI thread.
+     */
+    public static void read(Context context, final Callback callback) {
+        final DummyItem[] items = getItems();
+        if (items != null) {
+            callback.onFirstPageRead(items);
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final Handler handler = new Handler();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                final DummyItem[] items = readFile(appContext);
+                handler.post(new Runnable() {
+                    public void run() {
+                        callback.onFirstPageRead(items);
+                    }
+                });
+            }
+        });
+    }
+
+    private static synchronized DummyItem[] getItems() {
+        return sItems;
+    }
+
+    /**
+     * @return the cached items, or an empty array if there's no valid cache.  Reads a few
+     *     kilobytes the first time it's called.
+     */
+    private static synchronized DummyItem[] readFile(Context context) {
+        if (sItems != null) {
+            return sItems;
+        }
+        final File file = context.getFileStreamPath(FILE_NAME);
+        if (!file.exists()) {
+            return EMPTY;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC) {
+                return EMPTY;
+            }
+            final int count = Math.min(in.readInt(), MAX_ITEMS);
+            final DummyItem[] items = new DummyItem[count];
+            for (int i = 0; i < count; i++) {
+                final String id = in.readUTF();
+                items[i] = new DummyItem(id, in.readUTF());
+            }
+            sItems = items;
+            return items;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + file, e);
+            return EMPTY;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Save the first items of {@code repository}, whose first page must be loaded.  Writes a
+     * file, so don't call it on the UI thread.
+     */
+    public static void write(Context context, ItemRepository repository) {
+        final int count = Math.min(repository.getCount(), MAX_ITEMS);
+        final DummyItem[] items = new DummyItem[count];
+        for (int i = 0; i < count; i++) {
+            items[i] = repository.getItem(i);
+            if (items[i] == null) {
+                return; // First page not loaded
+            }
+        }
+        final File file = context.getFileStreamPath(FILE_NAME);
+        final File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+            for (DummyItem item : items) {
+                out.writeUTF(item.id);
+                out.writeUTF(item.content);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to rename " + temp);
+            }
+            synchronized (FirstPageCache.class) {
+                sItems = items;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file, e);
+            temp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+}
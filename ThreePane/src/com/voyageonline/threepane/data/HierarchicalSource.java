@@ -0,0 +1,10 @@
+package com.voyageonline.threepane.data;
+
+/**
+ * An {@link ItemSource} whose items form a tree: each item has a parent, or is a root.
+ */
+public interface HierarchicalSource extends ItemSource {
+
+    /** @return the position of the parent of the item at {@code position}, or -1 for a root. */
+    public int getParentPosition(int position);
+}
@@ -0,0 +1,234 @@
+package com.voyageonline.threepane.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * SQLite store for the catalog.
+ *
+ * Items are kept in insertion order: the row ID gives an item's position, both in the whole
+ * catalog and among its parent's children.  Row IDs start at 1 and have no gaps, since rows
+ * are never deleted and only new items are inserted, so an item's position in the whole
+ * catalog is its row ID less one.  The lists read it through
+ * {@link SqliteItemSource}, a page at a time, and the indexes are the ones those queries
+ * need: item ID lookups, and the children of a parent in row order.
+ *
+ * The database is filled by {@link CatalogImporter} from the feeds dropped in the app's files
+ * directory; until then the lists read the mapped or generated catalog.  It's in write-ahead
+ * logging mode, so that lists can read while a batch is being written.  Writes go through
+ * {@link #upsert} or {@link #bulkLoad}, one transaction per batch with compiled statements;
+ * each committed batch bumps {@link #getGeneration}, so that sources know to drop what they
+ * remember about the table.
+ *
+ * The database only becomes the default catalog once items have been committed to it, which
+ * is recorded by a marker file next to it (see {@link #isReady}): opening it creates an empty
+ * file, and a first load that fails leaves one behind, neither of which should hide the
+ * catalog the app had before.
+ */
+public class ItemDatabase extends SQLiteOpenHelper {
+    /** Name of the database file. */
+    public static final String NAME = "items.db";
+
+    /** Suffix of the file created next to it once items have been committed. */
+    private static final String READY_SUFFIX = "-ready";
+
+    private static final int VERSION = 1;
+
+    static final String TABLE_ITEMS = "items";
+    static final String COLUMN_ROW_ID = "_id";
+    static final String COLUMN_ITEM_ID = "item_id";
+    static final String COLUMN_PARENT_ID = "parent_id";
+    static final String COLUMN_CONTENT = "content";
+
+    /** Item ID lookups, which also keep the IDs unique. */
+    static final String INDEX_ITEM_ID = "items_item_id";
+
+    /** Children of a parent; SQLite appends the row ID, so they're in row order. */
+    static final String INDEX_PARENT_ID = "items_parent_id";
+
+    static final String CREATE_INDEX_ITEM_ID = "CREATE UNIQUE INDEX IF NOT EXISTS "
+            + INDEX_ITEM_ID + " ON " + TABLE_ITEMS + " (" + COLUMN_ITEM_ID + ")";
+    static final String CREATE_INDEX_PARENT_ID = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_PARENT_ID + " ON " + TABLE_ITEMS + " (" + COLUMN_PARENT_ID + ")";
+
+    private static final String TAG = "ItemDatabase";
+
+    private static ItemDatabase sInstance;
+
+    private final File mReadyFile;
+
+    private volatile int mGeneration;
+
+    private ItemDatabase(Context context) {
+        this(context, NAME);
+    }
+
+    /**
+     * A database in a file of its own, e.g. for a benchmark that mustn't touch the catalog.
+     * The app only uses the one from {@link #getInstance}.
+     */
+    ItemDatabase(Context context, String name) {
+        super(context.getApplicationContext(), name, null, VERSION);
+        mReadyFile = context.getDatabasePath(name + READY_SUFFIX);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized ItemDatabase getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ItemDatabase(context);
+        }
+        return sInstance;
+    }
+
+    /** @return true if items have been committed to the database.  Doesn't open it. */
+    public static boolean isReady(Context context) {
+        return context.getDatabasePath(NAME + READY_SUFFIX).exists();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        mReadyFile.delete(); // Left from a database that was deleted.
+        db.execSQL("CREATE TABLE " + TABLE_ITEMS + " ("
+                + COLUMN_ROW_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_ITEM_ID + " TEXT NOT NULL, "
+                + COLUMN_PARENT_ID + " TEXT, "
+                + COLUMN_CONTENT + " TEXT NOT NULL)");
+        db.execSQL(CREATE_INDEX_ITEM_ID);
+        db.execSQL(CREATE_INDEX_PARENT_ID);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ITEMS);
+        onCreate(db);
+    }
+
+    /**
+     * @return a number that changes whenever a batch of writes is committed.
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return true if there are no items.  Creates the database if it doesn't exist, so don't
+     *     call it on the UI thread.
+     */
+    public boolean isEmpty() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_ITEMS) == 0;
+    }
+
+    /**
+     * Insert the first {@code count} items, or update the content and parent of those whose ID
+     * is already in the table, in one transaction.  An updated item keeps its position.
+     *
+     * @param parentIds the parent ID of each item, or null for roots; or null if all are roots.
+     * @param updatedIds if not null, the IDs of the items updated rather than inserted are
+     *     added to it.  The others are at the end of the table.
+     * @return the number of items inserted.
+     */
+    public int upsert(DummyItem[] items, String[] parentIds, int count,
+            Collection<String> updatedIds) {
+        final SQLiteDatabase db = getWritableDatabase();
+        final SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_ITEMS
+                + " SET " + COLUMN_PARENT_ID + " = ?, " + COLUMN_CONTENT + " = ?"
+                + " WHERE " + COLUMN_ITEM_ID + " = ?");
+        final SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_ITEMS
+                + " (" + COLUMN_ITEM_ID + ", " + COLUMN_PARENT_ID + ", " + COLUMN_CONTENT
+                + ") VALUES (?, ?, ?)");
+        int inserted = 0;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                final DummyItem item = items[i];
+                final String parentId = (parentIds != null) ? parentIds[i] : null;
+                bindNullable(update, 1, parentId);
+                update.bindString(2, item.content);
+                update.bindString(3, item.id);
+                if (update.executeUpdateDelete() == 0) {
+                    insert.bindString(1, item.id);
+                    bindNullable(insert, 2, parentId);
+                    insert.bindString(3, item.content);
+                    insert.executeInsert();
+                    inserted++;
+                } else if (updatedIds != null) {
+                    updatedIds.add(item.id);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            update.close();
+            insert.close();
+        }
+        mGeneration++;
+        if (inserted > 0) {
+            markReady();
+        }
+        return inserted;
+    }
+
+    /**
+     * Write the first {@code count} items to the table, which should be empty, in one
+     * transaction.  The indexes are dropped while the rows are inserted, then built again, each
+     * in one pass over the table, which is much faster than updating them for every row.  The
+     * IDs must be unique; {@link BulkFeedLoader} makes sure of that.
+     *
+     * @param parentIds the parent ID of each item, or null for roots.
+     */
+    public void bulkLoad(DummyItem[] items, String[] parentIds, int count) {
+        final SQLiteDatabase db = getWritableDatabase();
+        final SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_ITEMS
+                + " (" + COLUMN_ITEM_ID + ", " + COLUMN_PARENT_ID + ", " + COLUMN_CONTENT
+                + ") VALUES (?, ?, ?)");
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_ITEM_ID);
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_PARENT_ID);
+            for (int i = 0; i < count; i++) {
+                insert.bindString(1, items[i].id);
+                bindNullable(insert, 2, parentIds[i]);
+                insert.bindString(3, items[i].content);
+                insert.executeInsert();
+            }
+            db.execSQL(CREATE_INDEX_ITEM_ID);
+            db.execSQL(CREATE_INDEX_PARENT_ID);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+        mGeneration++;
+        if (count > 0) {
+            markReady();
+        }
+    }
+
+    private void markReady() {
+        if (!mReadyFile.exists()) {
+            try {
+                mReadyFile.createNewFile();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to create " + mReadyFile, e);
+            }
+        }
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
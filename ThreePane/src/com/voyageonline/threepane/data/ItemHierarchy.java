@@ -0,0 +1,108 @@
+package com.voyageonline.threepane.data;
+
+import java.util.Arrays;
+
+/**
+ * Adjacency index of the items of a {@link HierarchicalSource}: the positions of the children
+ * of each item, so that listing them doesn't scan the catalog.
+ *
+ * The children of all items are stored back to back in one array, grouped by parent and in
+ * position order within a group; an offset array gives where each group starts.  Both are
+ * plain int arrays, so the index costs two ints per item, and getting the children of an item
+ * is two array reads plus a slice.  The roots are the children of {@link #ROOT}.
+ *
+ * Built in one pass over the parents with a counting sort.  Immutable.
+ */
+public final class ItemHierarchy {
+    /** The parent of the roots. */
+    public static final int ROOT = -1;
+
+    /**
+     * Children of the item at {@code p} are at {@code mChildren[mOffsets[p + 1]]} up to
+     * {@code mChildren[mOffsets[p + 2]]}; the roots start at {@code mOffsets[0]}.
+     */
+    private final int[] mOffsets;
+    private final int[] mChildren;
+
+    private ItemHierarchy(int[] offsets, int[] children) {
+        mOffsets = offsets;
+        mChildren = children;
+    }
+
+    /**
+     * Index the items of {@code source}.  Reads the parent of every item, so don't call it on
+     * the UI thread.
+     */
+    public static ItemHierarchy build(HierarchicalSource source) {
+        final int count = source.getCount();
+        final int[] parents = new int[count];
+        for (int i = 0; i < count; i++) {
+            parents[i] = source.getParentPosition(i);
+        }
+        return build(parents);
+    }
+
+    /**
+     * @param parents the parent of each item, or {@link #ROOT}.
+     */
+    public static ItemHierarchy build(int[] parents) {
+        final int count = parents.length;
+        // Count the children of each parent, shifted by one so that ROOT is at 0...
+        final int[] offsets = new int[count + 2];
+        for (int i = 0; i < count; i++) {
+            offsets[checkParent(parents[i], count) + 1]++;
+        }
+        // ... turn the counts into start offsets...
+        int start = 0;
+        for (int p = 0; p <= count; p++) {
+            final int n = offsets[p];
+            offsets[p] = start;
+            start += n;
+        }
+        offsets[count + 1] = start;
+        // ... and fill each group in position order.
+        final int[] fill = Arrays.copyOf(offsets, count + 1);
+        final int[] children = new int[count];
+        for (int i = 0; i < count; i++) {
+            children[fill[parents[i] + 1]++] = i;
+        }
+        return new ItemHierarchy(offsets, children);
+    }
+
+    private static int checkParent(int parent, int count) {
+        if (parent < ROOT || parent >= count) {
+            throw new IllegalArgumentException("Bad parent position " + parent);
+        }
+        return parent;
+    }
+
+    /** @return the number of items indexed. */
+    public int getItemCount() {
+        return mChildren.length;
+    }
+
+    /** @return the number of children of the item at {@code parent}, or of {@link #ROOT}. */
+    public int getChildCount(int parent) {
+        return mOffsets[parent + 2] - mOffsets[parent + 1];
+    }
+
+    /** @return the position of the {@code index}th child of {@code parent}. */
+    public int getChild(int parent, int index) {
+        return mChildren[mOffsets[parent + 1] + index];
+    }
+
+    /**
+     * Copy the positions of children {@code [start, start + count)} of {@code parent} into
+     * {@code dest}.
+     */
+    public void getChildren(int parent, int start, int count, int[] dest) {
+        System.arraycopy(mChildren, mOffsets[parent + 1] + start, dest, 0, count);
+    }
+
+    /** @return the index of {@code child} among the children of {@code parent}, or -1. */
+    public int indexOfChild(int parent, int child) {
+        final int from = mOffsets[parent + 1];
+        final int index = Arrays.binarySearch(mChildren, from, mOffsets[parent + 2], child);
+        return (index >= 0) ? index - from : -1;
+    }
+}
@@ -0,0 +1,461 @@
+package com.voyageonline.threepane.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.voyageonline.threepane.dummy.DummyContent;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Paged, windowed view of an {@link ItemSource}.
+ *
+ * Items are loaded a page at a time when first asked for.  Only the pages around the current
+ * viewport (see {@link #setViewport}) are kept; pages that scroll further away than
+ * {@link #WINDOW_RADIUS} pages are dropped, so memory use doesn't grow with the catalog.
+ *
+ * Pages are read from the source on {@link AsyncTask#THREAD_POOL_EXECUTOR}, never on the UI
+ * thread; {@link #getItem} returns null for an item whose page is still loading, and the
+ * {@link Listener} is told when it arrives.  Except for {@link #loadPage}, all methods must be
+ * called on the UI thread.
+ *
+ * When the catalog changes ({@link #notifyCatalogChanged}), the pages in memory are re-read
+ * and compared to the old ones with {@link ListDiff}, so that lists can update only the rows
+ * that changed.
+ *
+ * Each list owns its own repository; they all read the same {@link ItemSource}.  Repositories
+ * made by {@link #createForParent} follow the default catalog: if it's been replaced when they
+ * {@link #refresh}, e.g. by the {@link ItemDatabase} once an import has written to it, they
+ * switch to it.
+ */
+public class ItemRepository {
+    private static final String TAG = "ItemRepository";
+
+    /** Number of items per page. */
+    public static final int PAGE_SIZE = 50;
+
+    /** Number of pages kept on each side of the page in view. */
+    private static final int WINDOW_RADIUS = 2;
+
+    /** A catalog with no items. */
+    private static final ItemSource EMPTY_SOURCE = new DummyContent(0);
+
+    /** The default catalog.  See {@link #getDefaultSource} */
+    private static ItemSource sDefaultSource;
+
+    /** Index of the default catalog's tree, if it's a tree.  See {@link #getDefaultHierarchy} */
+    private static ItemHierarchy sDefaultHierarchy;
+
+    /** Repositories with a listener, for {@link #notifyCatalogChanged}.  UI thread only. */
+    private static final Set<ItemRepository> sObservedRepositories
+            = new HashSet<ItemRepository>();
+
+    /** See {@link #addCatalogObserver}.  UI thread only. */
+    private static final ArrayList<CatalogObserver> sCatalogObservers
+            = new ArrayList<CatalogObserver>();
+
+    /**
+     * Told when the catalog changes, e.g. to update data derived from all of it.
+     */
+    public interface CatalogObserver {
+        /**
+         * Called on the UI thread by {@link ItemRepository#notifyCatalogChanged}.
+         *
+         * @param updatedIds the IDs of the items whose content changed in place, or null if any
+         *     item may have changed.  Items added are at the end of the catalog.
+         */
+        public void onCatalogChanged(Collection<String> updatedIds);
+    }
+
+    public interface Listener {
+        /** Called on the UI thread when a requested page has been loaded. */
+        public void onPageLoaded(int page);
+
+        /**
+         * Called on the UI thread when the items in memory have been re-read after a change.
+         *
+         * @param start position of the first item covered by {@code diff}.  Changes outside
+         *     the pages in memory are only reflected in the count.
+         * @param countChanged true if {@link #getCount} changed.
+         */
+        public void onItemsChanged(int start, ListDiff diff, boolean countChanged);
+    }
+
+    private static final class EmptyListener implements Listener {
+        public static final Listener INSTANCE = new EmptyListener();
+
+        public void onPageLoaded(int page) {}
+
+        public void onItemsChanged(int start, ListDiff diff, boolean countChanged) {}
+    }
+
+    /** Read by the worker threads; replaced by {@link #onRefreshed}. */
+    private volatile ItemSource mSource;
+
+    /**
+     * For a repository over the default catalog, the application context and the parent ID
+     * it was made with, and the default source {@link #mSource} was derived from; else null.
+     */
+    private final Context mContext;
+    private final String mParentId;
+    private ItemSource mDefaultSource;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Loaded pages, keyed by page index.  Not a map, so that {@link #getItem} doesn't box the
+     * index on every bind.
+     */
+    private final SparseArray<DummyItem[]> mPages = new SparseArray<DummyItem[]>();
+
+    /** Pages being loaded in the background. */
+    private final SparseBooleanArray mPendingPages = new SparseBooleanArray();
+
+    /** Page in the middle of the viewport.  See {@link #setViewport} */
+    private int mCenterPage;
+
+    private int mCount;
+
+    /** Incremented when the pages are replaced by {@link #refresh}, to drop older loads. */
+    private int mGeneration;
+
+    /** Incremented by each {@link #refresh}, so that only the latest one is applied. */
+    private int mRefreshGeneration;
+
+    private Listener mListener = EmptyListener.INSTANCE;
+
+    /** Set by {@link #cancel}.  Read by the worker threads. */
+    private volatile boolean mCancelled;
+
+    /**
+     * Reads the item count from {@code source}, so don't call it on the UI thread.
+     */
+    public ItemRepository(ItemSource source) {
+        this(source, null, null, null);
+    }
+
+    private ItemRepository(ItemSource source, Context context, String parentId,
+            ItemSource defaultSource) {
+        mSource = source;
+        mContext = context;
+        mParentId = parentId;
+        mDefaultSource = defaultSource;
+        mCount = source.getCount();
+    }
+
+    /**
+     * @return a new repository over the children of the item with ID {@code parentId} in the
+     *     default catalog, or over its roots if null.  If the catalog isn't a tree, all its items
+     *     are roots.  May build the {@link ItemHierarchy}, so don't call it on the UI thread.
+     */
+    public static ItemRepository createForParent(Context context, String parentId) {
+        final ItemSource defaultSource = getDefaultSource(context);
+        return new ItemRepository(getChildSource(context, defaultSource, parentId),
+                context.getApplicationContext(), parentId, defaultSource);
+    }
+
+    /** @return the children of {@code parentId} in {@code defaultSource}, the default catalog. */
+    private static ItemSource getChildSource(Context context, ItemSource defaultSource,
+            String parentId) {
+        if (defaultSource instanceof SqliteItemSource) {
+            return ((SqliteItemSource) defaultSource).forChildren(parentId);
+        }
+        if (getDefaultHierarchy(context) == null) {
+            return (parentId == null) ? defaultSource : EMPTY_SOURCE;
+        }
+        return new ChildItemSource(context, parentId);
+    }
+
+    /**
+     * @return the index of the default catalog's tree, built the first time it's asked for and
+     *     after the catalog changes, or null if the catalog isn't a {@link HierarchicalSource}.
+     */
+    public static synchronized ItemHierarchy getDefaultHierarchy(Context context) {
+        final ItemSource source = getDefaultSource(context);
+        if (sDefaultHierarchy == null && source instanceof HierarchicalSource) {
+            sDefaultHierarchy = ItemHierarchy.build((HierarchicalSource) source);
+        }
+        return sDefaultHierarchy;
+    }
+
+    /**
+     * @return the app's {@link ItemDatabase} if items have been written to it, or else the
+     *     catalog file in the app's files directory, mapped by {@link MappedItemStore}, or else
+     *     the generated {@link DummyContent}.
+     */
+    public static synchronized ItemSource getDefaultSource(Context context) {
+        if (sDefaultSource == null && ItemDatabase.isReady(context)) {
+            sDefaultSource = SqliteItemSource.forAll(ItemDatabase.getInstance(context));
+        }
+        if (sDefaultSource == null) {
+            final File file = context.getFileStreamPath(MappedItemStore.FILE_NAME);
+            if (file.exists()) {
+                try {
+                    sDefaultSource = MappedItemStore.open(file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to open " + file, e);
+                }
+            }
+            if (sDefaultSource == null) {
+                sDefaultSource = DummyContent.INSTANCE;
+            }
+        }
+        return sDefaultSource;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = (listener == null) ? EmptyListener.INSTANCE : listener;
+        if (listener == null) {
+            sObservedRepositories.remove(this);
+        } else {
+            sObservedRepositories.add(this);
+        }
+    }
+
+    /**
+     * Tell all repositories with a listener that the catalog has changed, so that they
+     * {@link #refresh}.  Must be called on the UI thread.
+     *
+     * The default catalog is looked up again unless it's already the {@link ItemDatabase}, so
+     * that a database filled since, e.g. by {@link CatalogImporter}, takes over.
+     *
+     * @param updatedIds see {@link CatalogObserver#onCatalogChanged}
+     */
+    public static void notifyCatalogChanged(Collection<String> updatedIds) {
+        synchronized (ItemRepository.class) {
+            sDefaultHierarchy = null;
+            if (!(sDefaultSource instanceof SqliteItemSource)) {
+                sDefaultSource = null;
+            }
+        }
+        for (CatalogObserver observer : sCatalogObservers) {
+            observer.onCatalogChanged(updatedIds);
+        }
+        for (ItemRepository repository : new ArrayList<ItemRepository>(sObservedRepositories)) {
+            repository.refresh();
+        }
+    }
+
+    /**
+     * Call {@code observer} whenever {@link #notifyCatalogChanged} is.  Must be called on the UI
+     * thread.
+     */
+    public static void addCatalogObserver(CatalogObserver observer) {
+        sCatalogObservers.add(observer);
+    }
+
+    /** @return the number of items in the catalog. */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the item at {@code position}, or null if the position is out of range or its
+     *     page hasn't been loaded yet.  In the latter case the page is loaded in the background.
+     */
+    public DummyItem getItem(int position) {
+        if (position < 0 || position >= getCount()) {
+            return null;
+        }
+        final int page = position / PAGE_SIZE;
+        final DummyItem[] rows = mPages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return null;
+        }
+        return rows[position % PAGE_SIZE];
+    }
+
+    /**
+     * @return the item of the default catalog with the given ID, or null if there's no such
+     *     item.  In the {@link ItemDatabase} it's one index lookup; other sources find its
+     *     position first.  Reads the catalog, so don't call it on the UI thread.
+     */
+    public static DummyItem findById(Context context, String id) {
+        final ItemSource source = getDefaultSource(context);
+        if (source instanceof SqliteItemSource) {
+            return ((SqliteItemSource) source).findById(id);
+        }
+        final int position = source.indexOf(id);
+        if (position < 0) {
+            return null;
+        }
+        final DummyItem[] row = new DummyItem[1];
+        return (source.load(position, 1, row) == 1) ? row[0] : null;
+    }
+
+    /**
+     * Tell the repository which items are on screen.  Pages too far from the viewport are
+     * dropped, and the page after the viewport is loaded ahead of time.
+     */
+    public void setViewport(int firstPosition, int visibleCount) {
+        final int centerPage = (firstPosition + visibleCount / 2) / PAGE_SIZE;
+        if (centerPage == mCenterPage) {
+            return;
+        }
+        mCenterPage = centerPage;
+        evictOutsideWindow();
+        final int nextPage = (firstPosition + visibleCount) / PAGE_SIZE + 1;
+        if (nextPage * PAGE_SIZE < getCount() && mPages.get(nextPage) == null) {
+            requestPage(nextPage);
+        }
+    }
+
+    /**
+     * Load a page synchronously.  Used by loaders to fill the first page before the list is
+     * shown; must not be called on the UI thread, nor once the repository is in use there.
+     */
+    public void loadPage(int page) {
+        if (mPages.get(page) == null) {
+            mPages.put(page, readPage(page));
+        }
+    }
+
+    /**
+     * Stop loading pages.  Requests in flight are dropped and no more are made.
+     */
+    public void cancel() {
+        mCancelled = true;
+        mPendingPages.clear();
+        sObservedRepositories.remove(this);
+    }
+
+    /**
+     * Re-read the pages in memory in the background, then replace them and report the
+     * differences through {@link Listener#onItemsChanged}.  A repository over the default
+     * catalog reads the new one if it's been replaced.
+     */
+    public void refresh() {
+        if (mCancelled) {
+            return;
+        }
+        // With no pages in memory, only the count is re-read.
+        // The keys are kept in order.
+        final int pageCount = mPages.size();
+        final int firstPage = (pageCount == 0) ? 0 : mPages.keyAt(0);
+        final int lastPage = (pageCount == 0) ? -1 : mPages.keyAt(pageCount - 1);
+        final int start = firstPage * PAGE_SIZE;
+        final int end = (lastPage + 1) * PAGE_SIZE;
+        final int oldCount = Math.max(0, Math.min(mCount, end) - start);
+        final DummyItem[] oldItems = new DummyItem[oldCount];
+        for (int page = firstPage; page <= lastPage; page++) {
+            final DummyItem[] rows = mPages.get(page);
+            if (rows != null) {
+                final int offset = page * PAGE_SIZE - start;
+                System.arraycopy(rows, 0, oldItems, offset,
+                        Math.min(PAGE_SIZE, oldCount - offset));
+            }
+        }
+
+        final int refreshGeneration = ++mRefreshGeneration;
+        final ItemSource oldSource = mSource;
+        final ItemSource oldDefaultSource = mDefaultSource;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                if (mCancelled) {
+                    return;
+                }
+                ItemSource source = oldSource;
+                ItemSource defaultSource = oldDefaultSource;
+                if (mContext != null) {
+                    defaultSource = getDefaultSource(mContext);
+                    if (defaultSource != oldDefaultSource) {
+                        source = getChildSource(mContext, defaultSource, mParentId);
+                    }
+                }
+                final int newTotal = source.getCount();
+                final int newCount = Math.max(0, Math.min(newTotal, end) - start);
+                final DummyItem[] newItems = new DummyItem[newCount];
+                source.load(start, newCount, newItems);
+                final ListDiff diff = ListDiff.compute(oldItems, oldCount, newItems, newCount);
+                final ItemSource newSource = source;
+                final ItemSource newDefaultSource = defaultSource;
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        onRefreshed(refreshGeneration, newSource, newDefaultSource, start,
+                                newTotal, newItems, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    private DummyItem[] readPage(int page) {
+        final DummyItem[] rows = new DummyItem[PAGE_SIZE];
+        mSource.load(page * PAGE_SIZE, PAGE_SIZE, rows);
+        return rows;
+    }
+
+    private void requestPage(final int page) {
+        if (mCancelled || mPendingPages.get(page)) {
+            return;
+        }
+        mPendingPages.put(page, true);
+        final int generation = mGeneration;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                if (mCancelled) {
+                    return;
+                }
+                final DummyItem[] rows = readPage(page);
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        onPageLoaded(generation, page, rows);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int generation, int page, DummyItem[] rows) {
+        if (generation != mGeneration || !mPendingPages.get(page) || mCancelled) {
+            return;
+        }
+        mPendingPages.delete(page);
+        if (Math.abs(page - mCenterPage) > WINDOW_RADIUS) {
+            return; // Scrolled away while loading.
+        }
+        mPages.put(page, rows);
+        mListener.onPageLoaded(page);
+    }
+
+    private void onRefreshed(int refreshGeneration, ItemSource source,
+            ItemSource defaultSource, int start, int newTotal, DummyItem[] newItems,
+            ListDiff diff) {
+        if (refreshGeneration != mRefreshGeneration || mCancelled) {
+            return;
+        }
+        mSource = source;
+        mDefaultSource = defaultSource;
+        final boolean countChanged = (newTotal != mCount);
+        mCount = newTotal;
+        mGeneration++;
+        mPendingPages.clear();
+        mPages.clear();
+        for (int offset = 0; offset < newItems.length; offset += PAGE_SIZE) {
+            final DummyItem[] rows = new DummyItem[PAGE_SIZE];
+            System.arraycopy(newItems, offset, rows, 0,
+                    Math.min(PAGE_SIZE, newItems.length - offset));
+            mPages.put((start + offset) / PAGE_SIZE, rows);
+        }
+        mListener.onItemsChanged(start, diff, countChanged);
+    }
+
+    private void evictOutsideWindow() {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            if (Math.abs(mPages.keyAt(i) - mCenterPage) > WINDOW_RADIUS) {
+                mPages.removeAt(i);
+            }
+        }
+    }
+}
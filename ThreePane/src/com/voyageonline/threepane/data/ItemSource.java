@@ -0,0 +1,26 @@
+package com.voyageonline.threepane.data;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * A catalog of items addressed by position.
+ *
+ * Sources are read a page at a time by {@link ItemRepository}, so implementations never need
+ * to hold the whole catalog in memory.
+ */
+public interface ItemSource {
+
+    /** @return the number of items in the catalog. */
+    public int getCount();
+
+    /**
+     * Load the items in {@code [start, start + count)} into {@code dest}, starting at index 0.
+     *
+     * @return the number of items actually loaded, which is less than {@code count} at the end
+     *     of the catalog.
+     */
+    public int load(int start, int count, DummyItem[] dest);
+
+    /** @return the position of the item with the given ID, or -1 if there's no such item. */
+    public int indexOf(String id);
+}
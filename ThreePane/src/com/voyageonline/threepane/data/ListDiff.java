@@ -0,0 +1,192 @@
+package com.voyageonline.threepane.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Difference between two snapshots of a list of items.
+ *
+ * Items are matched by ID using Myers' algorithm, which takes O((N + M) D) time and O(D^2)
+ * space for D edits, so it's close to linear when little has changed.  Removed items that are
+ * inserted elsewhere are matched as moves, and matched items whose content differs are
+ * reported as changes.
+ *
+ * Meant to be computed on a worker thread; the result is immutable.
+ */
+public final class ListDiff {
+
+    private static final int NO_POSITION = -1;
+
+    /** New position of each old item, or {@link #NO_POSITION} if it was removed. */
+    private final int[] mOldToNew;
+
+    /** Old position of each new item, or {@link #NO_POSITION} if it was inserted. */
+    private final int[] mNewToOld;
+
+    /** Whether the content of each new item differs from its old version. */
+    private final boolean[] mChanged;
+
+    private final boolean mStructural;
+
+    private ListDiff(int[] oldToNew, int[] newToOld, boolean[] changed, boolean structural) {
+        mOldToNew = oldToNew;
+        mNewToOld = newToOld;
+        mChanged = changed;
+        mStructural = structural;
+    }
+
+    /**
+     * Compare the first {@code oldCount} items of {@code oldItems} to the first {@code newCount}
+     * items of {@code newItems}.  Null entries (e.g. items not loaded) never match.
+     */
+    public static ListDiff compute(DummyItem[] oldItems, int oldCount,
+            DummyItem[] newItems, int newCount) {
+        final int[] oldToNew = new int[oldCount];
+        final int[] newToOld = new int[newCount];
+        for (int i = 0; i < oldCount; i++) {
+            oldToNew[i] = NO_POSITION;
+        }
+        for (int i = 0; i < newCount; i++) {
+            newToOld[i] = NO_POSITION;
+        }
+        matchCommonSubsequence(oldItems, oldCount, newItems, newCount, oldToNew, newToOld);
+
+        // Everything unmatched so far is a removal or an insertion, unless the same ID is on
+        // both sides, in which case it's a move.
+        final Map<String, Integer> removed = new HashMap<String, Integer>();
+        for (int i = 0; i < oldCount; i++) {
+            if (oldToNew[i] == NO_POSITION && oldItems[i] != null) {
+                removed.put(oldItems[i].id, i);
+            }
+        }
+        boolean structural = (oldCount != newCount);
+        for (int i = 0; i < newCount; i++) {
+            if (newToOld[i] != NO_POSITION) {
+                continue;
+            }
+            structural = true;
+            final Integer oldPosition = (newItems[i] != null) ? removed.remove(newItems[i].id)
+                    : null;
+            if (oldPosition != null) {
+                newToOld[i] = oldPosition;
+                oldToNew[oldPosition] = i;
+            }
+        }
+        if (!removed.isEmpty()) {
+            structural = true;
+        }
+
+        final boolean[] changed = new boolean[newCount];
+        for (int i = 0; i < newCount; i++) {
+            final int oldPosition = newToOld[i];
+            if (oldPosition != NO_POSITION) {
+                changed[i] = !equals(oldItems[oldPosition].content, newItems[i].content);
+            }
+        }
+        return new ListDiff(oldToNew, newToOld, changed, structural);
+    }
+
+    /**
+     * Fill {@code oldToNew} and {@code newToOld} with a longest common subsequence of IDs.
+     */
+    private static void matchCommonSubsequence(DummyItem[] a, int n, DummyItem[] b, int m,
+            int[] oldToNew, int[] newToOld) {
+        final int max = n + m;
+        final int offset = max + 1;
+        final int[] v = new int[2 * max + 3];
+        // trace.get(d)[k + d] is the furthest x on diagonal k after d edits.
+        final List<int[]> trace = new ArrayList<int[]>();
+
+        int editCount = -1;
+        for (int d = 0; d <= max && editCount < 0; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1]; // Insertion
+                } else {
+                    x = v[offset + k - 1] + 1; // Removal
+                }
+                int y = x - k;
+                while (x < n && y < m && sameId(a[x], b[y])) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    editCount = d;
+                }
+            }
+            final int[] snapshot = new int[2 * d + 1];
+            System.arraycopy(v, offset - d, snapshot, 0, snapshot.length);
+            trace.add(snapshot);
+        }
+
+        // Walk back from the end, recording the diagonals (matches) along the way.
+        int x = n;
+        int y = m;
+        for (int d = editCount; d > 0; d--) {
+            final int[] previous = trace.get(d - 1);
+            final int k = x - y;
+            final int previousK;
+            if (k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1])) {
+                previousK = k + 1;
+            } else {
+                previousK = k - 1;
+            }
+            final int previousX = previous[previousK + d - 1];
+            final int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                x--;
+                y--;
+                oldToNew[x] = y;
+                newToOld[y] = x;
+            }
+            x = previousX;
+            y = previousY;
+        }
+        while (x > 0 && y > 0) {
+            x--;
+            y--;
+            oldToNew[x] = y;
+            newToOld[y] = x;
+        }
+    }
+
+    private static boolean sameId(DummyItem a, DummyItem b) {
+        return a != null && b != null && equals(a.id, b.id);
+    }
+
+    private static boolean equals(String a, String b) {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+    public int getOldCount() {
+        return mOldToNew.length;
+    }
+
+    public int getNewCount() {
+        return mNewToOld.length;
+    }
+
+    /**
+     * @return true if items were inserted, removed or moved; false if at most the content of
+     *     some items changed.
+     */
+    public boolean hasStructuralChanges() {
+        return mStructural;
+    }
+
+    /** @return the new position of an old item, or -1 if it was removed. */
+    public int getNewPosition(int oldPosition) {
+        return mOldToNew[oldPosition];
+    }
+
+    /** @return true if the content of the item at {@code newPosition} changed. */
+    public boolean isChanged(int newPosition) {
+        return mChanged[newPosition];
+    }
+}
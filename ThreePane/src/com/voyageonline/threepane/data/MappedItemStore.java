@@ -0,0 +1,163 @@
+package com.voyageonline.threepane.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Read-only {@link ItemSource} over a memory-mapped columnar file.
+ *
+ * File layout (all integers big-endian):
+ * <pre>
+ *   int     MAGIC
+ *   int     VERSION
+ *   int     rowCount
+ *   int[rowCount + 1]  ID offsets, relative to the blob
+ *   int[rowCount]      content offsets, relative to the blob
+ *   int[rowCount]      rows sorted by ID, for {@link #indexOf}
+ *   byte[]  blob       UTF-8 ID and content of each row, back to back
+ * </pre>
+ *
+ * The ID of a row ends where its content starts, and the content ends where the next row's
+ * ID starts.  The last ID offset is the size of the blob.
+ *
+ * Nothing is decoded when the file is opened; a row's strings are decoded only when the row
+ * is loaded.  Written by {@link MappedItemStoreWriter}.
+ */
+public class MappedItemStore implements ItemSource {
+    /** Name of the catalog file in the app's files directory. */
+    public static final String FILE_NAME = "catalog.bin";
+
+    static final int MAGIC = 0x54504331; // "TPC1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mIdOffsetsStart;
+    private final int mContentOffsetsStart;
+    private final int mIdOrderStart;
+    private final int mBlobStart;
+
+    private MappedItemStore(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a catalog file");
+        }
+        mCount = buffer.getInt(8);
+        mIdOffsetsStart = HEADER_SIZE;
+        mContentOffsetsStart = mIdOffsetsStart + (mCount + 1) * 4;
+        mIdOrderStart = mContentOffsetsStart + mCount * 4;
+        mBlobStart = mIdOrderStart + mCount * 4;
+    }
+
+    /**
+     * Map the given file.  Only the header is read.
+     */
+    public static MappedItemStore open(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            return new MappedItemStore(buffer);
+        } finally {
+            // The mapping stays valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int load(int start, int count, DummyItem[] dest) {
+        final int end = Math.min(start + count, mCount);
+        for (int row = start; row < end; row++) {
+            dest[row - start] = new DummyItem(getId(row), getContent(row));
+        }
+        return Math.max(0, end - start);
+    }
+
+    public int indexOf(String id) {
+        final byte[] key = toUtf8(id);
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int row = mBuffer.getInt(mIdOrderStart + mid * 4);
+            final int cmp = compareId(row, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /** @return the ID of the given row. */
+    public String getId(int row) {
+        return decode(getIdStart(row), getContentStart(row));
+    }
+
+    /** @return the content of the given row. */
+    public String getContent(int row) {
+        return decode(getContentStart(row), getIdStart(row + 1));
+    }
+
+    /** @return absolute position of the ID of {@code row}. */
+    private int getIdStart(int row) {
+        return mBlobStart + mBuffer.getInt(mIdOffsetsStart + row * 4);
+    }
+
+    /** @return absolute position of the content of {@code row}. */
+    private int getContentStart(int row) {
+        return mBlobStart + mBuffer.getInt(mContentOffsetsStart + row * 4);
+    }
+
+    private String decode(int start, int end) {
+        final byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = mBuffer.get(start + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e); // UTF-8 is always supported
+        }
+    }
+
+    /**
+     * Compare the ID of {@code row} to {@code key}, byte by byte, without decoding it.
+     */
+    private int compareId(int row, byte[] key) {
+        final int start = getIdStart(row);
+        final int length = getContentStart(row) - start;
+        final int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            final int a = mBuffer.get(start + i) & 0xff;
+            final int b = key[i] & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return length - key.length;
+    }
+
+    static byte[] toUtf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e); // UTF-8 is always supported
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.voyageonline.threepane.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Writes the file format read by {@link MappedItemStore}.
+ *
+ * Rows are kept in the order they're added.  The blob is streamed to a temporary file while
+ * rows are added; the offset tables and the ID order are written when {@link #close} is called.
+ */
+public class MappedItemStoreWriter {
+    private final File mFile;
+    private final File mBlobFile;
+    private final DataOutputStream mBlob;
+
+    private final List<byte[]> mIds = new ArrayList<byte[]>();
+    private int[] mIdOffsets = new int[1024];
+    private int[] mContentOffsets = new int[1024];
+    private int mCount;
+    private int mBlobSize;
+
+    public MappedItemStoreWriter(File file) throws IOException {
+        mFile = file;
+        mBlobFile = new File(file.getPath() + ".blob");
+        mBlob = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mBlobFile)));
+    }
+
+    /**
+     * Append a row.  IDs must be unique.
+     */
+    public void add(String id, String content) throws IOException {
+        if (mCount + 1 >= mIdOffsets.length) {
+            mIdOffsets = Arrays.copyOf(mIdOffsets, mIdOffsets.length * 2);
+            mContentOffsets = Arrays.copyOf(mContentOffsets, mContentOffsets.length * 2);
+        }
+        final byte[] idBytes = MappedItemStore.toUtf8(id);
+        final byte[] contentBytes = MappedItemStore.toUtf8(content);
+        mIds.add(idBytes);
+
+        mIdOffsets[mCount] = mBlobSize;
+        mBlob.write(idBytes);
+        mBlobSize += idBytes.length;
+        mContentOffsets[mCount] = mBlobSize;
+        mBlob.write(contentBytes);
+        mBlobSize += contentBytes.length;
+        mCount++;
+    }
+
+    /**
+     * Write the offset tables and the blob to the target file.
+     */
+    public void close() throws IOException {
+        mBlob.close();
+        // The last content ends at the end of the blob.
+        mIdOffsets[mCount] = mBlobSize;
+
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mFile)));
+        try {
+            out.writeInt(MappedItemStore.MAGIC);
+            out.writeInt(MappedItemStore.VERSION);
+            out.writeInt(mCount);
+            for (int row = 0; row <= mCount; row++) {
+                out.writeInt(mIdOffsets[row]);
+            }
+            for (int row = 0; row < mCount; row++) {
+                out.writeInt(mContentOffsets[row]);
+            }
+            for (int row : sortRowsById()) {
+                out.writeInt(row);
+            }
+            final InputStream blob = new FileInputStream(mBlobFile);
+            try {
+                final byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = blob.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                blob.close();
+            }
+        } finally {
+            out.close();
+            mBlobFile.delete();
+        }
+    }
+
+    private int[] sortRowsById() {
+        final Integer[] rows = new Integer[mCount];
+        for (int row = 0; row < mCount; row++) {
+            rows[row] = row;
+        }
+        Arrays.sort(rows, new Comparator<Integer>() {
+            public int compare(Integer lhs, Integer rhs) {
+                return compareBytes(mIds.get(lhs), mIds.get(rhs));
+            }
+        });
+        final int[] result = new int[mCount];
+        for (int i = 0; i < mCount; i++) {
+            result[i] = rows[i];
+        }
+        return result;
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        final int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            final int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Write all items of {@code source} to {@code file}.
+     */
+    public static void write(ItemSource source, File file) throws IOException {
+        final MappedItemStoreWriter writer = new MappedItemStoreWriter(file);
+        final DummyItem[] page = new DummyItem[ItemRepository.PAGE_SIZE];
+        final int count = source.getCount();
+        for (int start = 0; start < count; start += page.length) {
+            final int loaded = source.load(start, page.length, page);
+            for (int i = 0; i < loaded; i++) {
+                writer.add(page[i].id, page[i].content);
+            }
+        }
+        writer.close();
+    }
+}
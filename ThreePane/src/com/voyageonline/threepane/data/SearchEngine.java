@@ -0,0 +1,282 @@
+package com.voyageonline.threepane.data;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * As-you-type search over the default catalog, backed by a {@link SearchIndex}.
+ *
+ * The index is built in the background before the first query runs, and brought up to date
+ * when the catalog changes ({@link ItemRepository#notifyCatalogChanged}): items added at the
+ * end are indexed, and those updated in place are looked up by ID and indexed again, so an
+ * import batch costs about its own size.  If the change isn't known, the whole catalog is read
+ * again, but only items whose terms changed touch the index; if the default catalog itself
+ * was replaced, e.g. by the {@link ItemDatabase} an import writes to, it's indexed from
+ * scratch.  Indexing and queries run on one worker thread, so the index needs no locking;
+ * indexing stops between batches when a newer query comes, and carries on before that one.
+ *
+ * Each {@link #query} supersedes the previous one: a query that's waiting is dropped, and one
+ * that's running stops at its next check.  Results are delivered on the UI thread as an
+ * {@link ItemRepository} over the matching items, best first, with its first page loaded; the
+ * best results found so far are delivered while the query runs, then the final ones.
+ */
+public class SearchEngine {
+    private static final String TAG = "SearchEngine";
+
+    /** Largest number of results of a query. */
+    public static final int MAX_RESULTS = 500;
+
+    /** Number of items read from the catalog at a time while indexing. */
+    private static final int INDEX_BATCH = 256;
+
+    /** Number of updated IDs remembered, past which the whole catalog is read again. */
+    private static final int MAX_UPDATED_IDS = 4096;
+
+    public interface Listener {
+        /**
+         * Called on the UI thread with the results of {@link #query}.
+         *
+         * @param complete false for the best results so far, while the query is still running.
+         */
+        public void onResults(String query, ItemRepository results, boolean complete);
+    }
+
+    private static SearchEngine sInstance;
+
+    private final Context mContext;
+
+    /** The catalog the index was built from.  Worker thread only. */
+    private ItemSource mSource;
+
+    private final SearchIndex mIndex = new SearchIndex();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, TAG);
+                }
+            });
+
+    /** Incremented by each query and {@link #cancel}, to drop older queries. */
+    private final AtomicInteger mQueryGeneration = new AtomicInteger();
+
+    /**
+     * Number of items from the start of the catalog that are indexed, but for
+     * {@link #mUpdatedIds}.  Worker thread only.
+     */
+    private int mIndexedCount;
+
+    /** IDs of items updated in place since they were indexed.  Worker thread only. */
+    private final HashSet<String> mUpdatedIds = new HashSet<String>();
+
+    private SearchEngine(Context context) {
+        mContext = context.getApplicationContext();
+        ItemRepository.addCatalogObserver(new ItemRepository.CatalogObserver() {
+            public void onCatalogChanged(final Collection<String> updatedIds) {
+                mExecutor.execute(new Runnable() {
+                    public void run() {
+                        if (updatedIds == null
+                                || mUpdatedIds.size() + updatedIds.size() > MAX_UPDATED_IDS) {
+                            mIndexedCount = 0;
+                            mUpdatedIds.clear();
+                        } else {
+                            mUpdatedIds.addAll(updatedIds);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** @return the search engine over the default catalog.  UI thread only. */
+    public static SearchEngine getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SearchEngine(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Search for the items matching every word of {@code query}, cancelling the previous query.
+     * Must be called on the UI thread.
+     */
+    public void query(final String query, final Listener listener) {
+        final int generation = mQueryGeneration.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+            public void run() {
+                if (generation != mQueryGeneration.get()) {
+                    return; // Superseded while waiting.
+                }
+                if (!updateIndex(generation)) {
+                    return; // Superseded while indexing.
+                }
+                final long startMillis = SystemClock.uptimeMillis();
+                final int[] positions = mIndex.query(query, MAX_RESULTS,
+                        new SearchIndex.Progress() {
+                    public boolean isCancelled() {
+                        return generation != mQueryGeneration.get();
+                    }
+
+                    public void onPartialResults(int[] positions) {
+                        deliver(generation, query, positions, false, listener);
+                    }
+                });
+                if (positions != null) {
+                    if (Log.isLoggable(TAG, Log.DEBUG)) {
+                        Log.d(TAG, "\"" + query + "\": " + positions.length + " results in "
+                                + (SystemClock.uptimeMillis() - startMillis) + " ms");
+                    }
+                    deliver(generation, query, positions, true, listener);
+                }
+            }
+        });
+    }
+
+    /** Drop the current query.  Must be called on the UI thread. */
+    public void cancel() {
+        mQueryGeneration.incrementAndGet();
+    }
+
+    /**
+     * Load the first page of the results and hand them to the listener, unless the query has
+     * been superseded by then.
+     */
+    private void deliver(final int generation, final String query, int[] positions,
+            final boolean complete, final Listener listener) {
+        final ItemRepository results = new ItemRepository(new ResultSource(mSource, positions));
+        if (results.getCount() > 0) {
+            results.loadPage(0);
+        }
+        mHandler.post(new Runnable() {
+            public void run() {
+                if (generation == mQueryGeneration.get()) {
+                    listener.onResults(query, results, complete);
+                } else {
+                    results.cancel();
+                }
+            }
+        });
+    }
+
+    /**
+     * Index the items added or updated since the last time, and drop those removed.  Stops
+     * between batches if the query of {@code generation} is superseded; the rest is indexed by
+     * the next query.  Worker thread only.
+     *
+     * @return false if it stopped.
+     */
+    private boolean updateIndex(int generation) {
+        final ItemSource source = ItemRepository.getDefaultSource(mContext);
+        if (source != mSource) {
+            mIndex.truncate(0);
+            mIndexedCount = 0;
+            mUpdatedIds.clear();
+            mSource = source;
+        }
+        final int count = mSource.getCount();
+        if (mIndexedCount == count && mUpdatedIds.isEmpty()) {
+            return true;
+        }
+        final long startMillis = SystemClock.uptimeMillis();
+        mIndex.truncate(count);
+        mIndexedCount = Math.min(mIndexedCount, count);
+        final DummyItem[] rows = new DummyItem[INDEX_BATCH];
+        int read = 0;
+        int changed = 0;
+        while (mIndexedCount < count) {
+            if (generation != mQueryGeneration.get()) {
+                return false;
+            }
+            final int start = mIndexedCount;
+            final int loaded = mSource.load(start, Math.min(INDEX_BATCH, count - start), rows);
+            if (loaded == 0) {
+                break;
+            }
+            for (int i = 0; i < loaded; i++) {
+                if (mIndex.put(start + i, rows[i].content)) {
+                    changed++;
+                }
+            }
+            mIndexedCount += loaded;
+            read += loaded;
+        }
+        final Iterator<String> ids = mUpdatedIds.iterator();
+        for (int looked = 0; ids.hasNext(); looked++) {
+            if (looked % INDEX_BATCH == INDEX_BATCH - 1
+                    && generation != mQueryGeneration.get()) {
+                return false;
+            }
+            final int position = mSource.indexOf(ids.next());
+            ids.remove();
+            // Items from mIndexedCount on were just read, or will be next time.
+            if (position >= 0 && position < mIndexedCount && mSource.load(position, 1, rows) == 1
+                    && mIndex.put(position, rows[0].content)) {
+                changed++;
+            }
+            read++;
+        }
+        Log.i(TAG, "Indexed " + changed + " of " + read + " items read, "
+                + mIndex.getTermCount() + " terms, in "
+                + (SystemClock.uptimeMillis() - startMillis) + " ms");
+        return true;
+    }
+
+    /**
+     * The results of a query: the items of the catalog at the given positions.
+     */
+    private static class ResultSource implements ItemSource {
+        private final ItemSource mSource;
+        private final int[] mPositions;
+        private final DummyItem[] mRow = new DummyItem[1];
+
+        ResultSource(ItemSource source, int[] positions) {
+            mSource = source;
+            mPositions = positions;
+        }
+
+        public int getCount() {
+            return mPositions.length;
+        }
+
+        public synchronized int load(int start, int count, DummyItem[] dest) {
+            final int end = Math.min(mPositions.length, start + count);
+            for (int i = start; i < end; i++) {
+                dest[i - start] = (mSource.load(mPositions[i], 1, mRow) == 1) ? mRow[0] : null;
+            }
+            return Math.max(0, end - start);
+        }
+
+        public int indexOf(String id) {
+            final int position = mSource.indexOf(id);
+            if (position < 0) {
+                return -1;
+            }
+            for (int i = 0; i < mPositions.length; i++) {
+                if (mPositions[i] == position) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
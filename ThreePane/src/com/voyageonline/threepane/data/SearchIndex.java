@@ -0,0 +1,496 @@
+package com.voyageonline.threepane.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * In-memory inverted index over the content of a catalog, addressed by position.
+ *
+ * Content is split into lower-case tokens of letters and digits.  Each distinct token is a
+ * term with a sorted list of the positions it appears at.  A query token matches a term
+ * exactly, as a prefix of it, or anywhere inside it; the latter is found through an index of
+ * the terms' trigrams.  Every query token must match for an item to be a result; items are
+ * ranked by how well their tokens match, then by position, and only the best {@code limit}
+ * are kept, in a bounded heap.
+ *
+ * The terms of each item are also kept (the forward index), so that {@link #put} only
+ * touches the postings of the terms that changed.
+ *
+ * Not thread safe; {@link SearchEngine} uses it from a single thread.
+ */
+public class SearchIndex {
+    /** Score of a query token matching a term exactly, as a prefix, or inside it. */
+    private static final int SCORE_EXACT = 4;
+    private static final int SCORE_PREFIX = 2;
+    private static final int SCORE_INFIX = 1;
+
+    /** Number of 64-item words scanned between cancellation checks and partial results. */
+    private static final int CHUNK_WORDS = 1024;
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Told of the progress of a {@link #query}.
+     */
+    public interface Progress {
+        /** @return true to stop the query; it then returns null. */
+        public boolean isCancelled();
+
+        /** Called with the best results so far, as they'd be returned, if they changed. */
+        public void onPartialResults(int[] positions);
+    }
+
+    private static final class Term {
+        final String mText;
+        final int mId;
+
+        /** Sorted positions of the items with this term. */
+        int[] mPostings = EMPTY;
+        int mSize;
+
+        Term(String text, int id) {
+            mText = text;
+            mId = id;
+        }
+    }
+
+    /**
+     * Growable array of ints.
+     */
+    private static final class IntList {
+        int[] mValues = new int[4];
+        int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+    }
+
+    private final HashMap<String, Term> mTerms = new HashMap<String, Term>();
+    private final ArrayList<Term> mTermsById = new ArrayList<Term>();
+
+    /** Terms in text order, for prefix lookups.  Rebuilt when terms are added. */
+    private Term[] mSortedTerms = new Term[0];
+    private boolean mSortedTermsStale;
+
+    /** IDs of the terms containing each trigram.  See {@link #trigram} */
+    private final HashMap<Integer, IntList> mTrigrams = new HashMap<Integer, IntList>();
+
+    /** Number of items indexed; they're at positions [0, mDocCount). */
+    private int mDocCount;
+
+    /** Slice of {@link #mForward} holding the sorted term IDs of each item. */
+    private int[] mDocStart = new int[1024];
+    private int[] mDocLength = new int[1024];
+
+    private final IntList mForward = new IntList();
+
+    /** Entries of {@link #mForward} no longer used by any item. */
+    private int mForwardGarbage;
+
+    private final ArrayList<String> mTokens = new ArrayList<String>();
+    private final IntList mTermIds = new IntList();
+
+    /** @return the number of items indexed. */
+    public int getDocumentCount() {
+        return mDocCount;
+    }
+
+    /** @return the number of distinct terms. */
+    public int getTermCount() {
+        return mTermsById.size();
+    }
+
+    /**
+     * Index the content of the item at {@code position}, replacing what was indexed there.
+     * Items must be added in order: {@code position} can be at most {@link #getDocumentCount}.
+     *
+     * @return true if the item's terms changed.
+     */
+    public boolean put(int position, String content) {
+        if (position < 0 || position > mDocCount) {
+            throw new IllegalArgumentException("position " + position + " of " + mDocCount);
+        }
+        final IntList ids = getTermIds(content);
+        if (position == mDocCount) {
+            if (mDocCount == mDocStart.length) {
+                mDocStart = Arrays.copyOf(mDocStart, mDocCount * 2);
+                mDocLength = Arrays.copyOf(mDocLength, mDocCount * 2);
+            }
+            mDocCount++;
+            mDocStart[position] = mForward.mSize;
+            mDocLength[position] = 0;
+        }
+
+        // Both lists are sorted: walk them together.
+        final int start = mDocStart[position];
+        final int length = mDocLength[position];
+        final int[] forward = mForward.mValues;
+        int i = 0;
+        int j = 0;
+        boolean changed = false;
+        while (i < length || j < ids.mSize) {
+            final int oldId = (i < length) ? forward[start + i] : Integer.MAX_VALUE;
+            final int newId = (j < ids.mSize) ? ids.mValues[j] : Integer.MAX_VALUE;
+            if (oldId == newId) {
+                i++;
+                j++;
+            } else if (oldId < newId) {
+                removePosting(mTermsById.get(oldId), position);
+                changed = true;
+                i++;
+            } else {
+                addPosting(mTermsById.get(newId), position);
+                changed = true;
+                j++;
+            }
+        }
+        if (changed) {
+            setForward(position, ids);
+        }
+        return changed;
+    }
+
+    /**
+     * Drop the items at {@code count} and after.
+     */
+    public void truncate(int count) {
+        while (mDocCount > count) {
+            final int position = --mDocCount;
+            final int start = mDocStart[position];
+            for (int i = 0; i < mDocLength[position]; i++) {
+                removePosting(mTermsById.get(mForward.mValues[start + i]), position);
+            }
+            mForwardGarbage += mDocLength[position];
+            mDocLength[position] = 0;
+        }
+    }
+
+    /**
+     * Find the items matching every token of {@code query}.
+     *
+     * @return the positions of the best {@code limit} matches, best first, or null if the query
+     *     was cancelled.
+     */
+    public int[] query(String query, int limit, Progress progress) {
+        tokenize(query, mTokens);
+        if (mTokens.isEmpty() || limit <= 0) {
+            return EMPTY;
+        }
+        final int tokenCount = mTokens.size();
+        final int words = (mDocCount + 63) >>> 6;
+        final long[][] any = new long[tokenCount][];
+        final long[][] exact = new long[tokenCount][];
+        final long[][] prefix = new long[tokenCount][];
+        for (int t = 0; t < tokenCount; t++) {
+            if (progress.isCancelled()) {
+                return null;
+            }
+            any[t] = new long[words];
+            exact[t] = new long[words];
+            prefix[t] = new long[words];
+            if (!collectMatches(mTokens.get(t), any[t], exact[t], prefix[t])) {
+                return EMPTY; // This token matches nothing, so no item matches all of them.
+            }
+        }
+
+        final long[] heap = new long[limit];
+        int heapSize = 0;
+        boolean heapChanged = false;
+        for (int w = 0; w < words; w++) {
+            long candidates = any[0][w];
+            for (int t = 1; t < tokenCount && candidates != 0; t++) {
+                candidates &= any[t][w];
+            }
+            while (candidates != 0) {
+                final long bit = Long.lowestOneBit(candidates);
+                candidates ^= bit;
+                final int position = (w << 6) + Long.numberOfTrailingZeros(bit);
+                int score = 0;
+                for (int t = 0; t < tokenCount; t++) {
+                    if ((exact[t][w] & bit) != 0) {
+                        score += SCORE_EXACT;
+                    } else if ((prefix[t][w] & bit) != 0) {
+                        score += SCORE_PREFIX;
+                    } else {
+                        score += SCORE_INFIX;
+                    }
+                }
+                // Higher is better: by score, then by lower position.
+                final long key = ((long) score << 32) | (Integer.MAX_VALUE - position);
+                if (heapSize < limit) {
+                    heap[heapSize] = key;
+                    siftUp(heap, heapSize++);
+                    heapChanged = true;
+                } else if (key > heap[0]) {
+                    heap[0] = key;
+                    siftDown(heap, heapSize);
+                    heapChanged = true;
+                }
+            }
+            if ((w + 1) % CHUNK_WORDS == 0 && w + 1 < words) {
+                if (progress.isCancelled()) {
+                    return null;
+                }
+                if (heapChanged) {
+                    progress.onPartialResults(toPositions(heap, heapSize));
+                    heapChanged = false;
+                }
+            }
+        }
+        return toPositions(heap, heapSize);
+    }
+
+    /**
+     * Set the bits of the items with a term matching {@code token}.
+     *
+     * @return false if no term matches.
+     */
+    private boolean collectMatches(String token, long[] any, long[] exact, long[] prefix) {
+        boolean found = false;
+        final Term[] sorted = getSortedTerms();
+        for (int i = lowerBound(sorted, token); i < sorted.length; i++) {
+            final Term term = sorted[i];
+            if (!term.mText.startsWith(token)) {
+                break;
+            }
+            final boolean isExact = term.mText.length() == token.length();
+            setBits(term, any);
+            setBits(term, isExact ? exact : prefix);
+            found |= term.mSize > 0;
+        }
+        if (token.length() < 3) {
+            return found;
+        }
+        // Terms containing the token contain each of its trigrams; try the rarest one.
+        IntList rarest = null;
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            final IntList ids = mTrigrams.get(trigram(token, i));
+            if (ids == null) {
+                return found;
+            }
+            if (rarest == null || ids.mSize < rarest.mSize) {
+                rarest = ids;
+            }
+        }
+        for (int i = 0; i < rarest.mSize; i++) {
+            final Term term = mTermsById.get(rarest.mValues[i]);
+            if (term.mText.indexOf(token, 1) > 0) {
+                setBits(term, any);
+                found |= term.mSize > 0;
+            }
+        }
+        return found;
+    }
+
+    private static void setBits(Term term, long[] bits) {
+        final int[] postings = term.mPostings;
+        for (int i = 0; i < term.mSize; i++) {
+            bits[postings[i] >>> 6] |= 1L << postings[i];
+        }
+    }
+
+    /** @return the sorted term IDs of {@code content}, in a shared list. */
+    private IntList getTermIds(String content) {
+        tokenize(content, mTokens);
+        final IntList ids = mTermIds;
+        ids.mSize = 0;
+        for (int i = 0; i < mTokens.size(); i++) {
+            ids.add(getOrAddTerm(mTokens.get(i)).mId);
+        }
+        Arrays.sort(ids.mValues, 0, ids.mSize);
+        int unique = 0;
+        for (int i = 0; i < ids.mSize; i++) {
+            if (unique == 0 || ids.mValues[unique - 1] != ids.mValues[i]) {
+                ids.mValues[unique++] = ids.mValues[i];
+            }
+        }
+        ids.mSize = unique;
+        return ids;
+    }
+
+    private Term getOrAddTerm(String text) {
+        Term term = mTerms.get(text);
+        if (term == null) {
+            term = new Term(text, mTermsById.size());
+            mTerms.put(text, term);
+            mTermsById.add(term);
+            mSortedTermsStale = true;
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                final Integer key = trigram(text, i);
+                IntList ids = mTrigrams.get(key);
+                if (ids == null) {
+                    ids = new IntList();
+                    mTrigrams.put(key, ids);
+                }
+                // A term can repeat a trigram; it's only listed once.
+                if (ids.mSize == 0 || ids.mValues[ids.mSize - 1] != term.mId) {
+                    ids.add(term.mId);
+                }
+            }
+        }
+        return term;
+    }
+
+    private Term[] getSortedTerms() {
+        if (mSortedTermsStale) {
+            mSortedTerms = mTermsById.toArray(new Term[mTermsById.size()]);
+            Arrays.sort(mSortedTerms, new Comparator<Term>() {
+                public int compare(Term a, Term b) {
+                    return a.mText.compareTo(b.mText);
+                }
+            });
+            mSortedTermsStale = false;
+        }
+        return mSortedTerms;
+    }
+
+    /** @return the index of the first term not less than {@code text}. */
+    private static int lowerBound(Term[] sorted, String text) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sorted[mid].mText.compareTo(text) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Store the term IDs of an item, in place if they fit.  The forward index is compacted when
+     * more than half of it is garbage.
+     */
+    private void setForward(int position, IntList ids) {
+        final int oldLength = mDocLength[position];
+        if (ids.mSize <= oldLength) {
+            System.arraycopy(ids.mValues, 0, mForward.mValues, mDocStart[position], ids.mSize);
+            mForwardGarbage += oldLength - ids.mSize;
+        } else {
+            mDocStart[position] = mForward.mSize;
+            for (int i = 0; i < ids.mSize; i++) {
+                mForward.add(ids.mValues[i]);
+            }
+            mForwardGarbage += oldLength;
+        }
+        mDocLength[position] = ids.mSize;
+        if (mForwardGarbage > mForward.mSize / 2 && mForward.mSize > 1024) {
+            compactForward();
+        }
+    }
+
+    private void compactForward() {
+        final int[] values = new int[Math.max(4, mForward.mSize - mForwardGarbage)];
+        int size = 0;
+        for (int position = 0; position < mDocCount; position++) {
+            System.arraycopy(mForward.mValues, mDocStart[position], values, size,
+                    mDocLength[position]);
+            mDocStart[position] = size;
+            size += mDocLength[position];
+        }
+        mForward.mValues = values;
+        mForward.mSize = size;
+        mForwardGarbage = 0;
+    }
+
+    private static void addPosting(Term term, int position) {
+        if (term.mSize == term.mPostings.length) {
+            term.mPostings = Arrays.copyOf(term.mPostings, Math.max(2, term.mSize * 2));
+        }
+        int index = term.mSize;
+        if (index > 0 && term.mPostings[index - 1] > position) {
+            index = -1 - Arrays.binarySearch(term.mPostings, 0, term.mSize, position);
+            System.arraycopy(term.mPostings, index, term.mPostings, index + 1,
+                    term.mSize - index);
+        }
+        term.mPostings[index] = position;
+        term.mSize++;
+    }
+
+    private static void removePosting(Term term, int position) {
+        final int index = Arrays.binarySearch(term.mPostings, 0, term.mSize, position);
+        if (index >= 0) {
+            System.arraycopy(term.mPostings, index + 1, term.mPostings, index,
+                    term.mSize - index - 1);
+            term.mSize--;
+        }
+    }
+
+    /** @return a key for the three characters of {@code text} at {@code start} */
+    private static Integer trigram(String text, int start) {
+        return (text.charAt(start) * 31 + text.charAt(start + 1)) * 31 + text.charAt(start + 2);
+    }
+
+    /**
+     * Split {@code text} into lower-case runs of letters and digits.
+     */
+    static void tokenize(String text, ArrayList<String> out) {
+        out.clear();
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            final boolean inToken = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+    }
+
+    /** @return the positions in the heap, best first. */
+    private static int[] toPositions(long[] heap, int size) {
+        final long[] keys = Arrays.copyOf(heap, size);
+        Arrays.sort(keys);
+        final int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = Integer.MAX_VALUE - (int) keys[size - 1 - i];
+        }
+        return positions;
+    }
+
+    /** Min-heap: the worst result kept is at the root. */
+    private static void siftUp(long[] heap, int index) {
+        final long key = heap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (heap[parent] <= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = key;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        final long key = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (key <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
+    }
+}
@@ -0,0 +1,170 @@
+package com.voyageonline.threepane.data;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * The items of an {@link ItemDatabase}, or the children of one of its items, in row order.
+ *
+ * Each {@link #load} is one query for just the rows asked for, {@code LIMIT count}, so the
+ * cursor window never holds more than a page; nothing holds the whole table.  Rather than
+ * {@code OFFSET start}, which steps over every row before the page, a query starts after the
+ * row ID of a checkpoint: the source remembers the row ID every
+ * {@link ItemRepository#PAGE_SIZE} positions as it reads them, so scrolling on from a page
+ * reads the next one straight from the index.  Checkpoints and the count are forgotten when
+ * the database's generation changes.
+ *
+ * Over the whole table, an item's position is its row ID less one (see {@link ItemDatabase}),
+ * so {@link #indexOf} is a single lookup; among a parent's children, it counts the children
+ * before the item.
+ */
+public class SqliteItemSource implements ItemSource {
+    private static final int CHECKPOINT_INTERVAL = ItemRepository.PAGE_SIZE;
+
+    private static final String[] COLUMNS = {
+        ItemDatabase.COLUMN_ROW_ID, ItemDatabase.COLUMN_ITEM_ID, ItemDatabase.COLUMN_CONTENT
+    };
+
+    private final ItemDatabase mDatabase;
+
+    /** SQL condition on the rows of this source, and its arguments. */
+    private final String mScope;
+    private final String[] mScopeArgs;
+
+    /** True if the source has every row of the table, so positions are row IDs less one. */
+    private final boolean mWholeTable;
+
+    /** Generation of the database that {@link #mCount} and the checkpoints were read at. */
+    private int mGeneration = -1;
+    private int mCount = -1;
+
+    /** Position to the row ID of the row before it. */
+    private final TreeMap<Integer, Long> mCheckpoints = new TreeMap<Integer, Long>();
+
+    private SqliteItemSource(ItemDatabase database, String scope, String[] scopeArgs,
+            boolean wholeTable) {
+        mDatabase = database;
+        mScope = scope;
+        mScopeArgs = scopeArgs;
+        mWholeTable = wholeTable;
+    }
+
+    /** @return a source over all the items of {@code database}. */
+    public static SqliteItemSource forAll(ItemDatabase database) {
+        return new SqliteItemSource(database, "1", new String[0], true);
+    }
+
+    /**
+     * @return a source over the children of the item with ID {@code parentId} in the same
+     *     database, or over its roots if null.
+     */
+    public SqliteItemSource forChildren(String parentId) {
+        if (parentId == null) {
+            return new SqliteItemSource(mDatabase,
+                    ItemDatabase.COLUMN_PARENT_ID + " IS NULL", new String[0], false);
+        }
+        return new SqliteItemSource(mDatabase,
+                ItemDatabase.COLUMN_PARENT_ID + " = ?", new String[] { parentId }, false);
+    }
+
+    /** Forget what was read at an older generation of the database. */
+    private void checkGeneration() {
+        final int generation = mDatabase.getGeneration();
+        if (generation != mGeneration) {
+            mGeneration = generation;
+            mCount = -1;
+            mCheckpoints.clear();
+            mCheckpoints.put(0, 0L);
+        }
+    }
+
+    public synchronized int getCount() {
+        checkGeneration();
+        if (mCount < 0) {
+            mCount = (int) DatabaseUtils.longForQuery(mDatabase.getReadableDatabase(),
+                    "SELECT COUNT(*) FROM " + ItemDatabase.TABLE_ITEMS + " WHERE " + mScope,
+                    mScopeArgs);
+        }
+        return mCount;
+    }
+
+    public synchronized int load(int start, int count, DummyItem[] dest) {
+        if (count <= 0) {
+            return 0;
+        }
+        checkGeneration();
+        final Map.Entry<Integer, Long> checkpoint = mCheckpoints.floorEntry(start);
+        final int skip = start - checkpoint.getKey();
+        final Cursor cursor = mDatabase.getReadableDatabase().query(ItemDatabase.TABLE_ITEMS,
+                COLUMNS, mScope + " AND " + ItemDatabase.COLUMN_ROW_ID + " > ?",
+                withArg(checkpoint.getValue().toString()), null, null,
+                ItemDatabase.COLUMN_ROW_ID, (skip > 0) ? skip + "," + count : "" + count);
+        try {
+            int loaded = 0;
+            while (cursor.moveToNext()) {
+                dest[loaded++] = new DummyItem(cursor.getString(1), cursor.getString(2));
+                final int next = start + loaded;
+                if (next % CHECKPOINT_INTERVAL == 0) {
+                    mCheckpoints.put(next, cursor.getLong(0));
+                }
+            }
+            return loaded;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public synchronized int indexOf(String id) {
+        final SQLiteDatabase db = mDatabase.getReadableDatabase();
+        final Cursor cursor = db.query(ItemDatabase.TABLE_ITEMS,
+                new String[] { ItemDatabase.COLUMN_ROW_ID },
+                mScope + " AND " + ItemDatabase.COLUMN_ITEM_ID + " = ?", withArg(id),
+                null, null, null);
+        final long rowId;
+        try {
+            if (!cursor.moveToFirst()) {
+                return -1;
+            }
+            rowId = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+        if (mWholeTable) {
+            return (int) (rowId - 1);
+        }
+        return (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM "
+                + ItemDatabase.TABLE_ITEMS + " WHERE " + mScope + " AND "
+                + ItemDatabase.COLUMN_ROW_ID + " < ?", withArg(Long.toString(rowId)));
+    }
+
+    /**
+     * @return the item with ID {@code id}, or null if there's no such item, with one lookup in
+     *     the item ID index; unlike {@link #indexOf} among children, which counts the rows
+     *     before it.
+     */
+    public DummyItem findById(String id) {
+        final Cursor cursor = mDatabase.getReadableDatabase().query(ItemDatabase.TABLE_ITEMS,
+                new String[] { ItemDatabase.COLUMN_ITEM_ID, ItemDatabase.COLUMN_CONTENT },
+                mScope + " AND " + ItemDatabase.COLUMN_ITEM_ID + " = ?", withArg(id),
+                null, null, null);
+        try {
+            return cursor.moveToFirst()
+                    ? new DummyItem(cursor.getString(0), cursor.getString(1)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String[] withArg(String arg) {
+        final String[] args = new String[mScopeArgs.length + 1];
+        System.arraycopy(mScopeArgs, 0, args, 0, mScopeArgs.length);
+        args[mScopeArgs.length] = arg;
+        return args;
+    }
+}
@@ -1,11 +1,14 @@
 package com.voyageonline.threepane.dummy;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import com.voyageonline.threepane.data.HierarchicalSource;
 
-public class DummyContent {
+/**
+ * Generated catalog.  Items are created when a page is loaded, never all at once.
+ *
+ * The first items are roots; each root has the same number of children, which come after all
+ * the roots, grouped by parent.
+ */
+public class DummyContent implements HierarchicalSource {
 
     public static class DummyItem {
 
@@ -23,17 +26,58 @@ public class DummyContent {
         }
     }
 
-    public static List<DummyItem> ITEMS = new ArrayList<DummyItem>();
-    public static Map<String, DummyItem> ITEM_MAP = new HashMap<String, DummyItem>();
+    private static final int ROOT_COUNT = 3;
+    private static final int CHILDREN_PER_ROOT = 4;
 
-    static {
-        addItem(new DummyItem("1", "Item 1"));
-        addItem(new DummyItem("2", "Item 2"));
-        addItem(new DummyItem("3", "Item 3"));
+    public static final DummyContent INSTANCE = new DummyContent(ROOT_COUNT, CHILDREN_PER_ROOT);
+
+    private final int mRootCount;
+    private final int mChildrenPerRoot;
+    private final int mCount;
+
+    /** A catalog of {@code count} roots. */
+    public DummyContent(int count) {
+        this(count, 0);
+    }
+
+    public DummyContent(int rootCount, int childrenPerRoot) {
+        mRootCount = rootCount;
+        mChildrenPerRoot = childrenPerRoot;
+        mCount = rootCount * (1 + childrenPerRoot);
     }
 
-    private static void addItem(DummyItem item) {
-        ITEMS.add(item);
-        ITEM_MAP.put(item.id, item);
+    public int getCount() {
+        return mCount;
+    }
+
+    public int load(int start, int count, DummyItem[] dest) {
+        final int end = Math.min(start + count, mCount);
+        for (int i = start; i < end; i++) {
+            dest[i - start] = createItem(i, getParentPosition(i));
+        }
+        return Math.max(0, end - start);
+    }
+
+    public int getParentPosition(int position) {
+        return (position < mRootCount) ? -1 : (position - mRootCount) / mChildrenPerRoot;
+    }
+
+    public int indexOf(String id) {
+        final int position;
+        try {
+            position = Integer.parseInt(id) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return (position >= 0 && position < mCount) ? position : -1;
+    }
+
+    private DummyItem createItem(int position, int parent) {
+        final String id = Integer.toString(position + 1);
+        if (parent < 0) {
+            return new DummyItem(id, "Item " + id);
+        }
+        final int index = (position - mRootCount) % mChildrenPerRoot;
+        return new DummyItem(id, "Item " + (parent + 1) + "." + (index + 1));
     }
 }
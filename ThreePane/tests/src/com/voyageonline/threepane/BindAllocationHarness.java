@@ -0,0 +1,142 @@
+package com.voyageonline.threepane;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.ListView;
+
+import com.voyageonline.threepane.data.ItemRepository;
+import com.voyageonline.threepane.dummy.DummyContent;
+
+/**
+ * Binds recycled rows of an {@link ItemListAdapter} over and over, as scrolling through loaded
+ * pages would, and fails if binding allocates anything.
+ *
+ * The rows are items of pages far into a large catalog, so that a page index that's boxed or
+ * otherwise allocated on the way from the adapter to the {@link ItemRepository} is counted,
+ * and the header row is rebound with them.  The pages are loaded before counting starts:
+ * loading a page allocates, and isn't what's measured.  Views are inflated and bound once
+ * before counting too, so that they've sized their buffers.
+ *
+ * Run it with:
+ * <pre>
+ *   adb shell am instrument -w [-e binds 100000] \
+ *       com.voyageonline.threepane.tests/com.voyageonline.threepane.BindAllocationHarness
+ * </pre>
+ */
+public class BindAllocationHarness extends Instrumentation {
+    private static final int DEFAULT_BINDS = 100000;
+
+    /** Size of the catalog, and the pages of it that are bound. */
+    private static final int CATALOG_SIZE = 100000;
+    private static final int FIRST_PAGE = 200;
+    private static final int PAGE_COUNT = 3;
+
+    /** Number of recycled item rows, about a screenful. */
+    private static final int ROW_VIEWS = 12;
+
+    private int mBinds = DEFAULT_BINDS;
+
+    private ItemRepository mRepository;
+    private ItemListAdapter mAdapter;
+    private ListView mListView;
+    private View mHeaderView;
+    private final View[] mRowViews = new View[ROW_VIEWS];
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        if (arguments != null && arguments.getString("binds") != null) {
+            mBinds = Integer.parseInt(arguments.getString("binds"));
+        }
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        // Pages are loaded here: ItemRepository.loadPage() mustn't be called on the UI thread.
+        mRepository = new ItemRepository(new DummyContent(CATALOG_SIZE));
+        for (int page = FIRST_PAGE; page < FIRST_PAGE + PAGE_COUNT; page++) {
+            mRepository.loadPage(page);
+        }
+        final StringWriter report = new StringWriter();
+        final boolean[] passed = new boolean[1];
+        runOnMainSync(new Runnable() {
+            public void run() {
+                final PrintWriter writer = new PrintWriter(report);
+                passed[0] = runBinds(writer);
+                writer.flush();
+            }
+        });
+        mRepository.cancel();
+        final Bundle results = new Bundle();
+        results.putString(REPORT_KEY_STREAMRESULT, report.toString());
+        finish(passed[0] ? Activity.RESULT_OK : Activity.RESULT_CANCELED, results);
+    }
+
+    /** Set up the adapter, bind the rows and write the report.  UI thread only. */
+    private boolean runBinds(PrintWriter writer) {
+        final Context context = new ContextThemeWrapper(getTargetContext(), R.style.AppTheme);
+        mListView = new ListView(context);
+        mAdapter = new ItemListAdapter(context);
+        mAdapter.setRepository(mRepository);
+        mAdapter.setHeaderTitle("Items");
+
+        // Inflate the views, then bind each row once.
+        mHeaderView = mAdapter.getView(0, null, mListView);
+        for (int i = 0; i < ROW_VIEWS; i++) {
+            mRowViews[i] = mAdapter.getView(getRow(i), null, mListView);
+        }
+        final int rows = PAGE_COUNT * ItemRepository.PAGE_SIZE;
+        for (int i = 0; i < rows; i++) {
+            bind(i);
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < mBinds; i++) {
+            bind(i);
+        }
+        final long elapsedMs = (System.nanoTime() - startNanos) / 1000000;
+        final int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        writer.println("BindAllocationHarness: " + mBinds + " binds of pages " + FIRST_PAGE
+                + "-" + (FIRST_PAGE + PAGE_COUNT - 1) + ", " + elapsedMs + " ms");
+        writer.println("  allocations=" + allocations + " ("
+                + String.format("%.4f", allocations / (double) Math.max(1, mBinds))
+                + " per bind)");
+        if (allocations > 0) {
+            writer.println("FAILED: binding recycled rows allocated");
+            return false;
+        }
+        writer.println("OK");
+        return true;
+    }
+
+    /**
+     * Bind the {@code i}th row of the scroll into its recycled view, and the header once per
+     * screenful.
+     */
+    private void bind(int i) {
+        if (i % ROW_VIEWS == 0) {
+            mAdapter.getView(0, mHeaderView, mListView);
+        }
+        mAdapter.getView(getRow(i), mRowViews[i % ROW_VIEWS], mListView);
+    }
+
+    /** @return the adapter position of the {@code i}th row of the scroll. */
+    private static int getRow(int i) {
+        final int rows = PAGE_COUNT * ItemRepository.PAGE_SIZE;
+        // Item positions follow the header.
+        return 1 + FIRST_PAGE * ItemRepository.PAGE_SIZE + i % rows;
+    }
+}
@@ -0,0 +1,258 @@
+package com.voyageonline.threepane;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Runs thousands of {@link ThreePaneLayout} transitions in virtual time, on a
+ * {@link ManualTransitionClock}, and reports what they cost: layout passes, pane measures,
+ * frames, callbacks and allocations, along with the layout's {@link TransitionStats}.
+ *
+ * The layout is inflated from {@code three_pane.xml} without a window, at a tablet size, and
+ * laid out after each frame if it asked for it, as the view root would.  Nothing is drawn, so
+ * content latency isn't measured.  Each pane holds a view that counts its measures, which also
+ * takes in the layout pass at the end of a transition, after its record is reported.
+ *
+ * The run fails if panes are measured more than the layout promises: at most once per layout
+ * pass, and, when animating with translations, at most twice per transition whatever the
+ * number of frames, once for the widths the panes are moved at and once for their final
+ * widths.
+ *
+ * It's built by the test project in {@code tests/}, so it isn't part of the app.  Install both,
+ * then run it with:
+ * <pre>
+ *   adb shell am instrument -w [-e cycles 2000] [-e mode layout] \
+ *       com.voyageonline.threepane.tests/com.voyageonline.threepane.TransitionHarness
+ * </pre>
+ */
+public class TransitionHarness extends Instrumentation {
+    private static final int DEFAULT_CYCLES = 2000;
+    private static final int WARMUP_CYCLES = 20;
+
+    /** Size the layout is laid out at, in pixels. */
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 800;
+
+    /** Frames after which a transition that hasn't ended is counted as stuck. */
+    private static final int MAX_FRAMES = 120;
+
+    /** Number of panes of {@code three_pane.xml}. */
+    private static final int PANE_COUNT = 3;
+
+    /** Most measures of a pane per transition, when animating with translations. */
+    private static final int MAX_TRANSFORM_MEASURES_PER_PANE = 2;
+
+    private int mCycles = DEFAULT_CYCLES;
+    private int mAnimationMode = ThreePaneLayout.ANIMATION_MODE_TRANSFORM;
+
+    private ThreePaneLayout mLayout;
+    private final ManualTransitionClock mClock = new ManualTransitionClock();
+
+    // Counts, reset after the warm-up.
+    private int mLayoutPasses;
+    private int mTransitions;
+    private int mFinishedCallbacks;
+    private int mInterrupted;
+    private int mRecordedLayoutPasses;
+    private int mRecordedMeasures;
+    private int mVisiblePanesCallbacks;
+    private int mStuck;
+
+    /** Pane measures, counted by the {@link MeasureCounter}s. */
+    private int mMeasures;
+    private int mMaxMeasuresPerTransition;
+
+    /**
+     * Counts the measures of the pane it's in: a pane measures its child whenever it's
+     * measured itself.
+     */
+    private class MeasureCounter extends View {
+        MeasureCounter(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            mMeasures++;
+        }
+    }
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        if (arguments != null) {
+            if (arguments.getString("cycles") != null) {
+                mCycles = Integer.parseInt(arguments.getString("cycles"));
+            }
+            if ("layout".equals(arguments.getString("mode"))) {
+                mAnimationMode = ThreePaneLayout.ANIMATION_MODE_LAYOUT;
+            }
+        }
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        final StringWriter report = new StringWriter();
+        final boolean[] passed = new boolean[1];
+        runOnMainSync(new Runnable() {
+            public void run() {
+                final PrintWriter writer = new PrintWriter(report);
+                runCycles(writer);
+                passed[0] = check(writer);
+                writer.flush();
+            }
+        });
+        final Bundle results = new Bundle();
+        results.putString(REPORT_KEY_STREAMRESULT, report.toString());
+        finish(passed[0] ? Activity.RESULT_OK : Activity.RESULT_CANCELED, results);
+    }
+
+    /** Set up the layout, run the cycles and write the report.  UI thread only. */
+    private void runCycles(PrintWriter writer) {
+        final Context context = new ContextThemeWrapper(getTargetContext(), R.style.AppTheme);
+        mLayout = (ThreePaneLayout) LayoutInflater.from(context).inflate(R.layout.three_pane,
+                null);
+        for (int i = 0; i < mLayout.getChildCount(); i++) {
+            ((ViewGroup) mLayout.getChildAt(i)).addView(new MeasureCounter(context));
+        }
+        mLayout.setClock(mClock);
+        mLayout.setAnimationMode(mAnimationMode);
+        mLayout.setCallback(new ThreePaneLayout.Callback() {
+            public void onVisiblePanesChanged(int previousVisiblePanes) {
+                mVisiblePanesCallbacks++;
+            }
+        });
+        mLayout.setTransitionListener(new ThreePaneLayout.TransitionListener() {
+            public void onTransitionFinished(TransitionStats.Record record) {
+                mFinishedCallbacks++;
+                if (record.mInterrupted) {
+                    mInterrupted++;
+                }
+                mRecordedLayoutPasses += record.mLayoutPasses;
+                mRecordedMeasures += record.mPaneMeasures;
+            }
+
+            public void onFirstContentFrame(int fromState, long latencyMs) {}
+        });
+        traverse(); // The first layout picks the initial state.
+
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            runCycle();
+        }
+        resetCounts();
+        final int startFrames = mClock.getFrameCount();
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < mCycles; i++) {
+            runCycle();
+        }
+        final long elapsedMs = (System.nanoTime() - startNanos) / 1000000;
+        final int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        final int frames = mClock.getFrameCount() - startFrames;
+
+        writer.println("TransitionHarness: " + mCycles + " cycles, "
+                + ((mAnimationMode == ThreePaneLayout.ANIMATION_MODE_LAYOUT)
+                        ? "layout" : "transform") + " mode, " + elapsedMs + " ms");
+        writer.println("  transitions=" + mTransitions + " frames=" + frames
+                + " stuck=" + mStuck);
+        writer.println("  layoutPasses=" + mLayoutPasses + " paneMeasures=" + mMeasures
+                + " maxMeasuresPerTransition=" + mMaxMeasuresPerTransition);
+        writer.println("  recorded: layoutPasses=" + mRecordedLayoutPasses
+                + " paneMeasures=" + mRecordedMeasures);
+        writer.println("  callbacks: onTransitionFinished=" + mFinishedCallbacks
+                + " interrupted=" + mInterrupted
+                + " onVisiblePanesChanged=" + mVisiblePanesCallbacks);
+        writer.println("  allocations=" + allocations + " ("
+                + String.format("%.2f", allocations / (double) Math.max(1, mTransitions))
+                + " per transition)");
+        mLayout.getTransitionStats().dump("  ", writer);
+    }
+
+    /** @return false, after writing why, if the counts break the layout's promises. */
+    private boolean check(PrintWriter writer) {
+        boolean passed = true;
+        if (mStuck > 0) {
+            writer.println("FAILED: " + mStuck + " transitions didn't end");
+            passed = false;
+        }
+        if (mMeasures > PANE_COUNT * mLayoutPasses) {
+            writer.println("FAILED: " + mMeasures + " pane measures in " + mLayoutPasses
+                    + " layout passes");
+            passed = false;
+        }
+        if (mAnimationMode == ThreePaneLayout.ANIMATION_MODE_TRANSFORM
+                && mMaxMeasuresPerTransition > PANE_COUNT * MAX_TRANSFORM_MEASURES_PER_PANE) {
+            writer.println("FAILED: " + mMaxMeasuresPerTransition
+                    + " pane measures in one transition");
+            passed = false;
+        }
+        writer.println(passed ? "OK" : "FAILED");
+        return passed;
+    }
+
+    /** Go to the right pane and back, each time until the transition ends. */
+    private void runCycle() {
+        runTransition(true);
+        runTransition(false);
+    }
+
+    private void runTransition(boolean right) {
+        final int startMeasures = mMeasures;
+        if (right) {
+            mLayout.showRightPane();
+        } else {
+            mLayout.showLeftPane();
+        }
+        traverse();
+        int frames = 0;
+        while (mClock.hasPendingFrame()) {
+            if (++frames > MAX_FRAMES) {
+                mStuck++;
+                break;
+            }
+            mClock.advance(ManualTransitionClock.DEFAULT_FRAME_NANOS);
+            traverse();
+        }
+        mTransitions++;
+        mMaxMeasuresPerTransition = Math.max(mMaxMeasuresPerTransition,
+                mMeasures - startMeasures);
+    }
+
+    /** Measure and lay out the layout if it's asked for it, like a frame of the view root. */
+    private void traverse() {
+        if (!mLayout.isLayoutRequested()) {
+            return;
+        }
+        mLayout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mLayout.layout(0, 0, WIDTH, HEIGHT);
+        mLayoutPasses++;
+    }
+
+    private void resetCounts() {
+        mLayoutPasses = 0;
+        mTransitions = 0;
+        mFinishedCallbacks = 0;
+        mInterrupted = 0;
+        mRecordedLayoutPasses = 0;
+        mRecordedMeasures = 0;
+        mVisiblePanesCallbacks = 0;
+        mStuck = 0;
+        mMeasures = 0;
+        mMaxMeasuresPerTransition = 0;
+    }
+}
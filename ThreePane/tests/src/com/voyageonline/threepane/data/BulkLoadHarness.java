@@ -0,0 +1,96 @@
+package com.voyageonline.threepane.data;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+
+import com.voyageonline.threepane.dummy.DummyContent;
+import com.voyageonline.threepane.dummy.DummyContent.DummyItem;
+
+/**
+ * Times {@link ItemDatabase#bulkLoad} of a generated catalog into an empty database, which is
+ * what the first import of a large feed spends most of its time on once
+ * {@link BulkFeedLoader} has parsed it (the parsing is timed on a desktop JVM by
+ * {@code BulkLoadBenchmark}).  Then checks that the rows read back by position and by ID.
+ *
+ * The database is a file of its own, deleted afterwards, so the app's catalog isn't touched.
+ *
+ * Run it with:
+ * <pre>
+ *   adb shell am instrument -w [-e items 500000] \
+ *       com.voyageonline.threepane.tests/com.voyageonline.threepane.data.BulkLoadHarness
+ * </pre>
+ */
+public class BulkLoadHarness extends Instrumentation {
+    private static final int DEFAULT_ITEMS = 500000;
+
+    private static final String DATABASE_NAME = "bulk-load-harness.db";
+
+    private int mItems = DEFAULT_ITEMS;
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        if (arguments != null && arguments.getString("items") != null) {
+            mItems = Integer.parseInt(arguments.getString("items"));
+        }
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        final StringBuilder report = new StringBuilder();
+        final boolean passed = run(report);
+        final Bundle results = new Bundle();
+        results.putString(REPORT_KEY_STREAMRESULT, report.toString());
+        finish(passed ? Activity.RESULT_OK : Activity.RESULT_CANCELED, results);
+    }
+
+    /** Generate the items, load them and write the report.  Not on the UI thread. */
+    private boolean run(StringBuilder report) {
+        final DummyContent source = new DummyContent(mItems);
+        final DummyItem[] items = new DummyItem[mItems];
+        final String[] parentIds = new String[mItems];
+        source.load(0, mItems, items);
+        for (int i = 0; i < mItems; i++) {
+            final int parent = source.getParentPosition(i);
+            parentIds[i] = (parent >= 0) ? items[parent].id : null;
+        }
+
+        final Context context = getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        final ItemDatabase database = new ItemDatabase(context, DATABASE_NAME);
+        try {
+            database.getWritableDatabase(); // Created before timing starts.
+            final long startMillis = System.currentTimeMillis();
+            database.bulkLoad(items, parentIds, mItems);
+            final long elapsedMillis = System.currentTimeMillis() - startMillis;
+            report.append("BulkLoadHarness: " + mItems + " items in " + elapsedMillis + " ms ("
+                    + (mItems * 1000L / Math.max(1, elapsedMillis)) + " items/s)\n");
+
+            final SqliteItemSource all = SqliteItemSource.forAll(database);
+            final DummyItem[] row = new DummyItem[1];
+            int errors = 0;
+            if (all.getCount() != mItems) {
+                report.append("FAILED: count " + all.getCount() + "\n");
+                errors++;
+            }
+            for (int i = 0; i < mItems; i += Math.max(1, mItems / 1000)) {
+                if (all.load(i, 1, row) != 1 || !row[0].id.equals(items[i].id)
+                        || all.indexOf(items[i].id) != i) {
+                    if (errors < 10) {
+                        report.append("FAILED: row " + i + "\n");
+                    }
+                    errors++;
+                }
+            }
+            report.append((errors == 0) ? "OK\n" : "FAILED\n");
+            return errors == 0;
+        } finally {
+            database.close();
+            context.deleteDatabase(DATABASE_NAME);
+            context.getDatabasePath(DATABASE_NAME + "-ready").delete();
+        }
+    }
+}